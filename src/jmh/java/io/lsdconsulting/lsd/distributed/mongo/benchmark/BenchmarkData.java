@@ -0,0 +1,70 @@
+package io.lsdconsulting.lsd.distributed.mongo.benchmark;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.lsdconsulting.lsd.distributed.access.model.Type.REQUEST;
+import static org.apache.commons.lang3.RandomStringUtils.randomAlphanumeric;
+
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static InterceptedInteraction interaction(final String traceId, final int bodySize, final int headerCount) {
+        final Map<String, Collection<String>> headers = new LinkedHashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put("X-Header-" + i, List.of(randomAlphanumeric(32)));
+        }
+        return InterceptedInteraction.builder()
+                .traceId(traceId)
+                .body(randomAlphanumeric(bodySize))
+                .requestHeaders(headers)
+                .responseHeaders(headers)
+                .serviceName("service")
+                .target("target")
+                .path("/api/resource/" + randomAlphanumeric(8))
+                .httpStatus("200 OK")
+                .httpMethod("POST")
+                .type(REQUEST)
+                .profile("benchmark")
+                .elapsedTime(25L)
+                .createdAt(ZonedDateTime.now(ZoneId.of("UTC")))
+                .build();
+    }
+
+    static InterceptedDocumentMongoRepository activeRepository(final InterceptedDocumentMongoRepository repository) {
+        final long deadline = System.currentTimeMillis() + 30_000;
+        while (!repository.isActive()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The repository did not become active");
+            }
+            try {
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        return repository;
+    }
+
+    static byte[] encode(final Codec<InterceptedInteraction> codec, final InterceptedInteraction interaction) {
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (final BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            codec.encode(writer, interaction, EncoderContext.builder().build());
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,43 @@
+package io.lsdconsulting.lsd.distributed.mongo.benchmark;
+
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static de.flapdoodle.embed.mongo.distribution.Version.Main.PRODUCTION;
+import static de.flapdoodle.embed.process.runtime.Network.localhostIsIPv6;
+
+/**
+ * The same flapdoodle Mongo the integration tests use, on its own port so that benchmarks and tests can run side by side.
+ */
+final class EmbeddedMongo {
+
+    static final String MONGODB_HOST = "localhost";
+    static final int MONGODB_PORT = 27018;
+    static final String CONNECTION_STRING = "mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT;
+
+    private MongodExecutable mongodExecutable;
+
+    void start() {
+        try {
+            final MongodConfig mongodConfig = MongodConfig.builder()
+                    .version(PRODUCTION)
+                    .net(new Net(MONGODB_HOST, MONGODB_PORT, localhostIsIPv6()))
+                    .build();
+            mongodExecutable = MongodStarter.getDefaultInstance().prepare(mongodConfig);
+            mongodExecutable.start();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void stop() {
+        if (mongodExecutable != null) {
+            mongodExecutable.stop();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.lsdconsulting.lsd.distributed.mongo.benchmark;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.Compression;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.InterceptedInteractionCodec;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.TypeCodec;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.ZonedDateTimeCodec;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.MongoClientSettings.getDefaultCodecRegistry;
+import static org.bson.codecs.configuration.CodecRegistries.*;
+import static org.bson.codecs.pojo.PojoCodecProvider.builder;
+
+/**
+ * Compares the hand-written {@link InterceptedInteractionCodec} with the automatic POJO codec it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InterceptedInteractionCodecBenchmark {
+
+    @Param({"256", "16384"})
+    public int bodySize;
+
+    @Param({"4", "32"})
+    public int headerCount;
+
+    private final EncoderContext encoderContext = EncoderContext.builder().build();
+    private final DecoderContext decoderContext = DecoderContext.builder().build();
+
+    private final Codec<InterceptedInteraction> handWrittenCodec = new InterceptedInteractionCodec();
+    private final Codec<InterceptedInteraction> compressingCodec = new InterceptedInteractionCodec(Compression.deflate(Compression.DEFAULT_THRESHOLD, List.of()));
+    private final Codec<InterceptedInteraction> automaticPojoCodec = fromRegistries(
+            getDefaultCodecRegistry(),
+            fromCodecs(new ZonedDateTimeCodec(), new TypeCodec()),
+            fromProviders(builder().automatic(true).build())
+    ).get(InterceptedInteraction.class);
+
+    private InterceptedInteraction interaction;
+    private byte[] encoded;
+    private byte[] encodedCompressed;
+
+    @Setup
+    public void setup() {
+        interaction = BenchmarkData.interaction("traceId", bodySize, headerCount);
+        encoded = BenchmarkData.encode(handWrittenCodec, interaction);
+        encodedCompressed = BenchmarkData.encode(compressingCodec, interaction);
+    }
+
+    @Benchmark
+    public BasicOutputBuffer encodeHandWritten() {
+        return encode(handWrittenCodec);
+    }
+
+    @Benchmark
+    public BasicOutputBuffer encodeAutomaticPojo() {
+        return encode(automaticPojoCodec);
+    }
+
+    @Benchmark
+    public InterceptedInteraction decodeHandWritten() {
+        return decode(handWrittenCodec);
+    }
+
+    @Benchmark
+    public InterceptedInteraction decodeAutomaticPojo() {
+        return decode(automaticPojoCodec);
+    }
+
+    @Benchmark
+    public InterceptedInteraction decodeHandWrittenCompressed() {
+        try (final BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(encodedCompressed))) {
+            return compressingCodec.decode(reader, decoderContext);
+        }
+    }
+
+    private BasicOutputBuffer encode(final Codec<InterceptedInteraction> codec) {
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (final BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            codec.encode(writer, interaction, encoderContext);
+        }
+        return buffer;
+    }
+
+    private InterceptedInteraction decode(final Codec<InterceptedInteraction> codec) {
+        try (final BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(encoded))) {
+            return codec.decode(reader, decoderContext);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.lsdconsulting.lsd.distributed.mongo.benchmark;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.lsdconsulting.lsd.distributed.mongo.benchmark.EmbeddedMongo.CONNECTION_STRING;
+import static org.apache.commons.lang3.RandomStringUtils.randomAlphanumeric;
+
+/**
+ * Latency of {@link InterceptedDocumentMongoRepository#findByTraceIds(String...)} as traces grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RepositoryFindBenchmark {
+
+    private static final long COLLECTION_SIZE_LIMIT_MBS = 1000L;
+    private static final int BODY_SIZE = 1024;
+    private static final int HEADER_COUNT = 8;
+    private static final int UNRELATED_INTERACTIONS = 10_000;
+
+    @Param({"10", "1000", "10000"})
+    public int traceSize;
+
+    private final EmbeddedMongo embeddedMongo = new EmbeddedMongo();
+
+    private InterceptedDocumentMongoRepository repository;
+    private String traceId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        embeddedMongo.start();
+        repository = BenchmarkData.activeRepository(new InterceptedDocumentMongoRepository(CONNECTION_STRING, 1500, COLLECTION_SIZE_LIMIT_MBS));
+        traceId = randomAlphanumeric(16);
+        insert(traceId, traceSize);
+        insert(randomAlphanumeric(16), UNRELATED_INTERACTIONS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.close();
+        embeddedMongo.stop();
+    }
+
+    @Benchmark
+    public List<InterceptedInteraction> findByTraceIds() {
+        return repository.findByTraceIds(traceId);
+    }
+
+    private void insert(final String traceId, final int count) {
+        final List<InterceptedInteraction> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            batch.add(BenchmarkData.interaction(traceId, BODY_SIZE, HEADER_COUNT));
+            if (batch.size() == 1000) {
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        repository.saveAll(batch);
+    }
+}
@@ -0,0 +1,56 @@
+package io.lsdconsulting.lsd.distributed.mongo.benchmark;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.lsdconsulting.lsd.distributed.mongo.benchmark.EmbeddedMongo.CONNECTION_STRING;
+
+/**
+ * Throughput of {@link InterceptedDocumentMongoRepository#save(InterceptedInteraction)}
+ * for a single caller and for concurrent request threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RepositorySaveBenchmark {
+
+    private static final long COLLECTION_SIZE_LIMIT_MBS = 100L;
+
+    @Param({"256", "16384"})
+    public int bodySize;
+
+    @Param({"4", "32"})
+    public int headerCount;
+
+    private final EmbeddedMongo embeddedMongo = new EmbeddedMongo();
+
+    private InterceptedDocumentMongoRepository repository;
+    private InterceptedInteraction interaction;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        embeddedMongo.start();
+        repository = BenchmarkData.activeRepository(new InterceptedDocumentMongoRepository(CONNECTION_STRING, 1500, COLLECTION_SIZE_LIMIT_MBS));
+        interaction = BenchmarkData.interaction("traceId", bodySize, headerCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.close();
+        embeddedMongo.stop();
+    }
+
+    @Benchmark
+    public void save() {
+        repository.save(interaction);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void saveConcurrently() {
+        repository.save(interaction);
+    }
+}
@@ -0,0 +1,51 @@
+package io.lsdconsulting.lsd.distributed.mongo.benchmark;
+
+import io.lsdconsulting.lsd.distributed.access.model.Type;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.TypeCodec;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.ZonedDateTimeCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding {@code createdAt} and {@code type}, which happens for every interaction read, with the lookups
+ * the codecs made before: {@code ZoneId.of("UTC")} and {@link Type#valueOf} per document. Run with
+ * {@code -prof gc} to compare allocation too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScalarCodecBenchmark {
+
+    private long epochMilli;
+    private String typeName;
+
+    @Setup
+    public void setup() {
+        epochMilli = System.currentTimeMillis();
+        typeName = Type.RESPONSE.name();
+    }
+
+    @Benchmark
+    public ZonedDateTime decodeCreatedAt() {
+        return ZonedDateTimeCodec.fromEpochMilli(epochMilli);
+    }
+
+    @Benchmark
+    public ZonedDateTime decodeCreatedAtWithZoneLookup() {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.of("UTC"));
+    }
+
+    @Benchmark
+    public Type decodeType() {
+        return TypeCodec.forName(typeName);
+    }
+
+    @Benchmark
+    public Type decodeTypeWithValueOf() {
+        return Type.valueOf(typeName);
+    }
+}
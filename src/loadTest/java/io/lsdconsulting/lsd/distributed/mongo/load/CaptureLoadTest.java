@@ -0,0 +1,232 @@
+package io.lsdconsulting.lsd.distributed.mongo.load;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.jeasy.random.EasyRandom;
+import org.jeasy.random.EasyRandomParameters;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.lsdconsulting.lsd.distributed.access.model.Type.REQUEST;
+import static io.lsdconsulting.lsd.distributed.mongo.integration.testapp.repository.TestRepository.*;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.CircuitBreaker.State.CLOSED;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.lang3.RandomStringUtils.randomAlphanumeric;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.jeasy.random.FieldPredicates.named;
+
+/**
+ * Drives many concurrent callers through one repository against the embedded Mongo of the integration tests, and logs
+ * the throughput and latency percentiles of saves and reads and the time spent waiting for a pooled connection.
+ * Shaped by {@link LoadTestSettings}; run with {@code ./gradlew loadTest}.
+ */
+@Slf4j
+class CaptureLoadTest {
+
+    private static final int DB_CONNECTION_TIMEOUT = 500;
+    private static final long DB_COLLECTION_SIZE_LIMIT = 1024L;
+    private static final int GENERATED_INTERACTIONS = 1000;
+
+    private final LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+    private final EasyRandom easyRandom = new EasyRandom(new EasyRandomParameters()
+            .seed(Instant.now().toEpochMilli())
+            .randomize(named("traceId"), () -> traceId())
+            .randomize(named("body"), () -> randomAlphanumeric(settings.getPayloadBytes()))
+            .randomize(ZonedDateTime.class, () -> ZonedDateTime.now(ZoneId.of("UTC"))));
+
+    @BeforeAll
+    static void setupTestDatabase() {
+        setupDatabase();
+    }
+
+    @AfterAll
+    static void tearDownTestDatabase() {
+        tearDownDatabase();
+        tearDownClient();
+    }
+
+    @Test
+    public void shouldSustainConcurrentCapture() throws InterruptedException {
+        final PoolWaitListener poolWaits = new PoolWaitListener();
+        try (final InterceptedDocumentMongoRepository repository = repository(poolWaits)) {
+            final Run run = new Run(repository);
+
+            run.drive(settings.getDuration());
+
+            log.info("Load test - {}\n{}\npool wait: {}", settings, run.report(), poolWaits.summarise());
+            assertThat(run.operations(), is(greaterThan(0L)));
+            assertThat(repository.getCircuitBreakerState(), is(CLOSED));
+        }
+    }
+
+    /**
+     * Kills mongod every restart interval while the callers carry on, and measures how long after it is back a newly
+     * saved interaction can be read again. Callers must not be held up while it is down.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "loadTest.soak", matches = "true")
+    public void shouldRecoverEveryTimeMongoRestartsMidRun() throws InterruptedException {
+        final PoolWaitListener poolWaits = new PoolWaitListener();
+        try (final InterceptedDocumentMongoRepository repository = repository(poolWaits)) {
+            final Run run = new Run(repository);
+            final List<Long> recoveryMillis = new ArrayList<>();
+            final Thread chaos = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        MILLISECONDS.sleep(settings.getRestartInterval().toMillis());
+                        log.info("Soak test - killing mongod");
+                        tearDownDatabase();
+                        MILLISECONDS.sleep(settings.getDowntime().toMillis());
+                        setupDatabase();
+                        final long restartedAt = nanoTime();
+                        final InterceptedInteraction probe = InterceptedInteraction.builder()
+                                .traceId("probe-" + randomAlphanumeric(16))
+                                .type(REQUEST)
+                                .createdAt(ZonedDateTime.now(ZoneId.of("UTC")))
+                                .build();
+                        await().atMost(settings.getRestartInterval()).pollInterval(50, MILLISECONDS).until(() -> {
+                            repository.save(probe);
+                            return !repository.findByTraceIds(probe.getTraceId()).isEmpty();
+                        });
+                        recoveryMillis.add(NANOSECONDS.toMillis(nanoTime() - restartedAt));
+                        log.info("Soak test - recovered {} ms after mongod restarted", recoveryMillis.get(recoveryMillis.size() - 1));
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "lsd-load-test-chaos");
+            chaos.start();
+
+            run.drive(settings.getDuration());
+            chaos.interrupt();
+            chaos.join();
+
+            log.info("Soak test - {}\n{}\npool wait: {}\nrecovery: {} ms", settings, run.report(), poolWaits.summarise(), recoveryMillis);
+            assertThat(recoveryMillis, is(not(empty())));
+            assertThat(run.slowestMillis(), is(lessThan(settings.getDowntime().toMillis())));
+        }
+    }
+
+    private InterceptedDocumentMongoRepository repository(final PoolWaitListener poolWaits) {
+        final InterceptedDocumentMongoRepository repository = InterceptedDocumentMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(DB_CONNECTION_TIMEOUT)
+                .collectionSizeLimit(DB_COLLECTION_SIZE_LIMIT)
+                .initialRetryDelayMillis(100L)
+                .clientSettingsCustomizer(builder -> builder.applyToConnectionPoolSettings(pool -> pool
+                        .maxSize(settings.getMaxPoolSize())
+                        .addConnectionPoolListener(poolWaits)))
+                .build();
+        await().until(repository::isActive);
+        return repository;
+    }
+
+    private String traceId() {
+        return "load-trace-" + ThreadLocalRandom.current().nextInt(settings.getTraces());
+    }
+
+    private ExecutorService callers() {
+        if (settings.isVirtualThreads()) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (final ReflectiveOperationException e) {
+                log.warn("Virtual threads are not available on Java {}, using platform threads", System.getProperty("java.version"));
+            }
+        }
+        return Executors.newFixedThreadPool(settings.getThreads());
+    }
+
+    /**
+     * The callers of one run. Interactions are generated before the clock starts, so that generating them is not
+     * measured.
+     */
+    private class Run {
+        private final InterceptedDocumentMongoRepository repository;
+        private final List<InterceptedInteraction> interactions = new ArrayList<>();
+        private final List<LatencyRecorder> saves = new ArrayList<>();
+        private final List<LatencyRecorder> reads = new ArrayList<>();
+        private final AtomicLong slowestNanos = new AtomicLong();
+        private long elapsedNanos;
+
+        Run(final InterceptedDocumentMongoRepository repository) {
+            this.repository = repository;
+            for (int i = 0; i < GENERATED_INTERACTIONS; i++) {
+                interactions.add(easyRandom.nextObject(InterceptedInteraction.class));
+            }
+        }
+
+        void drive(final Duration duration) throws InterruptedException {
+            final AtomicBoolean running = new AtomicBoolean(true);
+            final ExecutorService callers = callers();
+            final long startTime = nanoTime();
+            for (int i = 0; i < settings.getThreads(); i++) {
+                final LatencyRecorder saveLatencies = new LatencyRecorder();
+                final LatencyRecorder readLatencies = new LatencyRecorder();
+                saves.add(saveLatencies);
+                reads.add(readLatencies);
+                callers.execute(() -> call(running, saveLatencies, readLatencies));
+            }
+            MILLISECONDS.sleep(duration.toMillis());
+            running.set(false);
+            callers.shutdown();
+            if (!callers.awaitTermination(1, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("The callers did not finish");
+            }
+            elapsedNanos = nanoTime() - startTime;
+        }
+
+        private void call(final AtomicBoolean running, final LatencyRecorder saveLatencies, final LatencyRecorder readLatencies) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (running.get()) {
+                final InterceptedInteraction interaction = interactions.get(random.nextInt(interactions.size()));
+                final long startTime = nanoTime();
+                if (random.nextDouble() < settings.getReadRatio()) {
+                    repository.findByTraceIds(interaction.getTraceId());
+                    record(readLatencies, nanoTime() - startTime);
+                } else {
+                    repository.save(interaction);
+                    record(saveLatencies, nanoTime() - startTime);
+                }
+            }
+        }
+
+        private void record(final LatencyRecorder recorder, final long durationNanos) {
+            recorder.record(durationNanos);
+            slowestNanos.accumulateAndGet(durationNanos, Math::max);
+        }
+
+        long operations() {
+            return saves.stream().mapToLong(LatencyRecorder::count).sum() + reads.stream().mapToLong(LatencyRecorder::count).sum();
+        }
+
+        long slowestMillis() {
+            return NANOSECONDS.toMillis(slowestNanos.get());
+        }
+
+        String report() {
+            final double seconds = elapsedNanos / 1e9;
+            return String.format("throughput: %.0f ops/s over %.1f s%nsave: %s%nread: %s", operations() / seconds, seconds,
+                    LatencyRecorder.summarise(saves), LatencyRecorder.summarise(reads));
+        }
+    }
+}
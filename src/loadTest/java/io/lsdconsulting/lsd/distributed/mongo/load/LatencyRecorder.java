@@ -0,0 +1,54 @@
+package io.lsdconsulting.lsd.distributed.mongo.load;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Keeps every latency recorded, so that percentiles are exact rather than bucketed. Not thread safe: every caller
+ * records into its own, and they are combined once the callers have finished.
+ */
+class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count;
+
+    void record(final long durationNanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = durationNanos;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Count, p50, p99, p999 and max of the combined latencies, in milliseconds.
+     */
+    static String summarise(final Collection<LatencyRecorder> recorders) {
+        final long[] combined = new long[recorders.stream().mapToInt(LatencyRecorder::count).sum()];
+        int offset = 0;
+        for (final LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.samples, 0, combined, offset, recorder.count);
+            offset += recorder.count;
+        }
+        if (combined.length == 0) {
+            return "count=0";
+        }
+        Arrays.sort(combined);
+        return String.format("count=%d p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms", combined.length,
+                millis(percentile(combined, 0.5)), millis(percentile(combined, 0.99)),
+                millis(percentile(combined, 0.999)), millis(combined[combined.length - 1]));
+    }
+
+    private static long percentile(final long[] sorted, final double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / (double) MILLISECONDS.toNanos(1);
+    }
+}
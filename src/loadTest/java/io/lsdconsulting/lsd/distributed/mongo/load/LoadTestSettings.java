@@ -0,0 +1,57 @@
+package io.lsdconsulting.lsd.distributed.mongo.load;
+
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * The shape of a load test run, read from {@code loadTest.*} system properties, which the Gradle task passes on
+ * from the project properties of the same name.
+ */
+@Value
+class LoadTestSettings {
+
+    /**
+     * Concurrent callers.
+     */
+    int threads;
+    /**
+     * Run every caller on a virtual thread, on a JDK that has them.
+     */
+    boolean virtualThreads;
+    Duration duration;
+    /**
+     * Size of the body of every interaction saved.
+     */
+    int payloadBytes;
+    /**
+     * Share of the operations that read a trace rather than save an interaction, from 0 to 1.
+     */
+    double readRatio;
+    /**
+     * Distinct trace ids the interactions are spread over.
+     */
+    int traces;
+    int maxPoolSize;
+    /**
+     * How often mongod is killed and restarted in soak mode.
+     */
+    Duration restartInterval;
+    /**
+     * How long mongod stays down every time it is killed in soak mode.
+     */
+    Duration downtime;
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.getInteger("loadTest.threads", 32),
+                Boolean.getBoolean("loadTest.virtualThreads"),
+                Duration.ofSeconds(Long.getLong("loadTest.durationSeconds", 30)),
+                Integer.getInteger("loadTest.payloadBytes", 2048),
+                Double.parseDouble(System.getProperty("loadTest.readRatio", "0.1")),
+                Integer.getInteger("loadTest.traces", 1000),
+                Integer.getInteger("loadTest.maxPoolSize", 100),
+                Duration.ofSeconds(Long.getLong("loadTest.restartIntervalSeconds", 20)),
+                Duration.ofSeconds(Long.getLong("loadTest.downtimeSeconds", 5)));
+    }
+}
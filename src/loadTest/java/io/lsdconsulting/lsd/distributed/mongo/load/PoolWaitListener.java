@@ -0,0 +1,55 @@
+package io.lsdconsulting.lsd.distributed.mongo.load;
+
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * Measures how long callers wait for a pooled connection. The synchronous driver checks a connection out on the
+ * calling thread, so the start of a check-out is kept per thread until it completes.
+ */
+class PoolWaitListener implements ConnectionPoolListener {
+
+    private final List<LatencyRecorder> recorders = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<LatencyRecorder> recorder = ThreadLocal.withInitial(() -> {
+        final LatencyRecorder threadRecorder = new LatencyRecorder();
+        recorders.add(threadRecorder);
+        return threadRecorder;
+    });
+    private final ThreadLocal<Long> checkOutStarted = new ThreadLocal<>();
+    private final AtomicLong failedCheckOuts = new AtomicLong();
+
+    @Override
+    public void connectionCheckOutStarted(final ConnectionCheckOutStartedEvent event) {
+        checkOutStarted.set(nanoTime());
+    }
+
+    @Override
+    public void connectionCheckedOut(final ConnectionCheckedOutEvent event) {
+        final Long started = checkOutStarted.get();
+        if (started != null) {
+            recorder.get().record(nanoTime() - started);
+            checkOutStarted.remove();
+        }
+    }
+
+    @Override
+    public void connectionCheckOutFailed(final ConnectionCheckOutFailedEvent event) {
+        checkOutStarted.remove();
+        failedCheckOuts.incrementAndGet();
+    }
+
+    /**
+     * Only once the callers have finished.
+     */
+    String summarise() {
+        return LatencyRecorder.summarise(recorders) + " failed=" + failedCheckOuts.get();
+    }
+}
@@ -0,0 +1,103 @@
+package io.lsdconsulting.lsd.distributed.mongo.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import io.lsdconsulting.lsd.distributed.mongo.repository.MongoClientSettingsCustomizer;
+import lombok.Builder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Connection pool, write concern and read preference settings for the repository's client. Settings left unset keep
+ * the value from the connection string, or else the driver default.
+ */
+public class ClientSettingsProperties implements MongoClientSettingsCustomizer {
+
+    private final Integer maxPoolSize;
+    private final Integer minPoolSize;
+    private final Long maxWaitTimeMillis;
+    private final WriteConcern writeConcern;
+    private final Boolean journal;
+    private final ReadPreference readPreference;
+    private final Boolean retryWrites;
+
+    /**
+     * @param writeConcern   the number of acknowledging members, {@code majority} or a tag set name
+     * @param readPreference a read preference mode such as {@code primary} or {@code secondaryPreferred}
+     * @throws IllegalArgumentException if unacknowledged writes are to be journaled
+     */
+    @Builder
+    private ClientSettingsProperties(final Integer maxPoolSize, final Integer minPoolSize, final Long maxWaitTimeMillis,
+                                     final String writeConcern, final Boolean journal, final String readPreference,
+                                     final Boolean retryWrites) {
+        this.maxPoolSize = maxPoolSize;
+        this.minPoolSize = minPoolSize;
+        this.maxWaitTimeMillis = maxWaitTimeMillis;
+        this.writeConcern = writeConcern != null ? parseWriteConcern(writeConcern) : null;
+        this.journal = journal;
+        this.readPreference = readPreference != null ? ReadPreference.valueOf(readPreference) : null;
+        this.retryWrites = retryWrites;
+        if (this.writeConcern != null) {
+            validate(withJournal(this.writeConcern));
+        }
+    }
+
+    /**
+     * Whether none of the settings is set, leaving the client as the connection string configures it.
+     */
+    public boolean isEmpty() {
+        return maxPoolSize == null && minPoolSize == null && maxWaitTimeMillis == null && writeConcern == null
+                && journal == null && readPreference == null && retryWrites == null;
+    }
+
+    @Override
+    public void customize(final MongoClientSettings.Builder builder) {
+        if (maxPoolSize != null || minPoolSize != null || maxWaitTimeMillis != null) {
+            builder.applyToConnectionPoolSettings(pool -> {
+                if (maxPoolSize != null) {
+                    pool.maxSize(maxPoolSize);
+                }
+                if (minPoolSize != null) {
+                    pool.minSize(minPoolSize);
+                }
+                if (maxWaitTimeMillis != null) {
+                    pool.maxWaitTime(maxWaitTimeMillis, MILLISECONDS);
+                }
+            });
+        }
+        if (writeConcern != null || journal != null) {
+            // Only the journal being set keeps the acknowledgement of the connection string
+            final WriteConcern concern = withJournal(writeConcern != null ? writeConcern : builder.build().getWriteConcern());
+            builder.writeConcern(validate(concern));
+        }
+        if (readPreference != null) {
+            builder.readPreference(readPreference);
+        }
+        if (retryWrites != null) {
+            builder.retryWrites(retryWrites);
+        }
+    }
+
+    private WriteConcern withJournal(final WriteConcern concern) {
+        return journal != null ? concern.withJournal(journal) : concern;
+    }
+
+    private static WriteConcern validate(final WriteConcern concern) {
+        if (!concern.isValid()) {
+            throw new IllegalArgumentException("Unacknowledged writes cannot be journaled - writeConcern:" + concern);
+        }
+        return concern;
+    }
+
+    private static WriteConcern parseWriteConcern(final String writeConcern) {
+        if ("majority".equalsIgnoreCase(writeConcern)) {
+            return WriteConcern.MAJORITY;
+        }
+        try {
+            return new WriteConcern(Integer.parseInt(writeConcern));
+        } catch (final NumberFormatException e) {
+            return new WriteConcern(writeConcern);
+        }
+    }
+}
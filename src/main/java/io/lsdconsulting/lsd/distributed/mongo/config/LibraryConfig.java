@@ -1,25 +1,277 @@
 package io.lsdconsulting.lsd.distributed.mongo.config;
 
+import com.mongodb.client.MongoClient;
 import io.lsdconsulting.lsd.distributed.access.repository.InterceptedDocumentRepository;
+import io.lsdconsulting.lsd.distributed.mongo.metrics.MicrometerRepositoryMetrics;
+import io.lsdconsulting.lsd.distributed.mongo.repository.CircuitBreaker;
+import io.lsdconsulting.lsd.distributed.mongo.repository.DiskSpool;
 import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentReactiveMongoRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.MongoClientSettingsCustomizer;
+import io.lsdconsulting.lsd.distributed.mongo.repository.OverflowPolicy;
+import io.lsdconsulting.lsd.distributed.mongo.repository.PendingWritePolicy;
+import io.lsdconsulting.lsd.distributed.mongo.repository.RepositoryMetrics;
+import io.lsdconsulting.lsd.distributed.mongo.repository.StorageLayout;
+import io.lsdconsulting.lsd.distributed.mongo.repository.TraceCache;
+import io.lsdconsulting.lsd.distributed.mongo.repository.WriteBehindInterceptedDocumentRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.Compression;
+import io.lsdconsulting.lsd.distributed.mongo.repository.policy.ConfigurableWritePolicy;
+import io.lsdconsulting.lsd.distributed.mongo.repository.policy.WritePolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
 
-import static io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository.DEFAULT_COLLECTION_SIZE_LIMIT_MBS;
-import static io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository.DEFAULT_TIMEOUT_MILLIS;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import static io.lsdconsulting.lsd.distributed.mongo.repository.CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.CircuitBreaker.DEFAULT_PROBE_INTERVAL_MILLIS;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository.*;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.WriteBehindInterceptedDocumentRepository.*;
+
+@Slf4j
 @Configuration
-@ConditionalOnProperty(name = "lsd.dist.db.connectionString")
+@ConditionalOnExpression("'${lsd.dist.db.connectionString:}' != '' or ${lsd.dist.db.sharedClient.enabled:false}")
+@AutoConfigureAfter(name = {
+        "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration",
+        "org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration"
+})
 public class LibraryConfig {
 
+    /**
+     * Applied before any application provided {@link MongoClientSettingsCustomizer}, which can override these settings.
+     */
+    @Bean
+    @Order(0)
+    public ClientSettingsProperties lsdClientSettingsProperties(@Value("${lsd.dist.db.pool.maxSize:#{null}}") Integer maxPoolSize,
+                                                                @Value("${lsd.dist.db.pool.minSize:#{null}}") Integer minPoolSize,
+                                                                @Value("${lsd.dist.db.pool.maxWaitTime.millis:#{null}}") Long maxWaitTime,
+                                                                @Value("${lsd.dist.db.writeConcern.w:#{null}}") String writeConcern,
+                                                                @Value("${lsd.dist.db.writeConcern.journal:#{null}}") Boolean journal,
+                                                                @Value("${lsd.dist.db.readPreference:#{null}}") String readPreference,
+                                                                @Value("${lsd.dist.db.retryWrites:#{null}}") Boolean retryWrites) {
+        return ClientSettingsProperties.builder()
+                .maxPoolSize(maxPoolSize)
+                .minPoolSize(minPoolSize)
+                .maxWaitTimeMillis(maxWaitTime)
+                .writeConcern(writeConcern)
+                .journal(journal)
+                .readPreference(readPreference)
+                .retryWrites(retryWrites)
+                .build();
+    }
+
+    /**
+     * Applied by whichever repository is created, unless the application provides a {@link WritePolicy} of its own.
+     */
     @Bean
-    public InterceptedDocumentRepository interceptedDocumentRepository(@Value("${lsd.dist.db.connectionString}") String dbConnectionString,
+    @ConditionalOnMissingBean(WritePolicy.class)
+    public WritePolicy lsdWritePolicy(@Value("${lsd.dist.db.writePolicy.maxBodySize:#{null}}") Integer maxBodySize,
+                                      @Value("${lsd.dist.db.writePolicy.headers.allow:}") String[] allowedHeaders,
+                                      @Value("${lsd.dist.db.writePolicy.headers.deny:}") String[] deniedHeaders,
+                                      @Value("${lsd.dist.db.writePolicy.sampling.rate:1.0}") Double samplingRate,
+                                      @Value("${lsd.dist.db.writePolicy.sampling.services:}") String[] serviceSamplingRates,
+                                      @Value("${lsd.dist.db.writePolicy.sampling.paths:}") String[] pathSamplingRates) {
+        return ConfigurableWritePolicy.builder()
+                .maxBodySize(maxBodySize)
+                .allowedHeaders(List.of(allowedHeaders))
+                .deniedHeaders(List.of(deniedHeaders))
+                .samplingRate(samplingRate)
+                .serviceSamplingRates(samplingRates(serviceSamplingRates))
+                .pathSamplingRates(samplingRates(pathSamplingRates))
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(InterceptedDocumentRepository.class)
+    public InterceptedDocumentRepository interceptedDocumentRepository(ClientSettingsProperties lsdClientSettingsProperties,
+                                                                       ObjectProvider<RepositoryMetrics> repositoryMetrics,
+                                                                       ObjectProvider<WritePolicy> writePolicy,
+                                                                       ObjectProvider<MongoClientSettingsCustomizer> clientSettingsCustomizers,
+                                                                       ObjectProvider<MongoClient> mongoClients,
+                                                                       @Value("${lsd.dist.db.sharedClient.enabled:false}") boolean sharedClientEnabled,
+                                                                       @Value("${lsd.dist.db.sharedClient.databaseName:lsd}") String sharedDatabaseName,
+                                                                       @Value("${lsd.dist.db.connectionString:#{null}}") String dbConnectionString,
                                                                        @Value("${lsd.dist.db.trustStoreLocation:#{null}}") String trustStoreLocation,
                                                                        @Value("${lsd.dist.db.trustStorePassword:#{null}}") String trustStorePassword,
                                                                        @Value("${lsd.dist.db.connectionTimeout.millis:#{" + DEFAULT_TIMEOUT_MILLIS + "}}") Integer connectionTimeout,
-                                                                       @Value("${lsd.dist.db.collectionSizeLimit.megabytes:#{" + DEFAULT_COLLECTION_SIZE_LIMIT_MBS + "}}") Long collectionSizeLimit) {
-        return new InterceptedDocumentMongoRepository(dbConnectionString, trustStoreLocation, trustStorePassword, connectionTimeout, collectionSizeLimit);
+                                                                       @Value("${lsd.dist.db.collectionSizeLimit.megabytes:#{" + DEFAULT_COLLECTION_SIZE_LIMIT_MBS + "}}") Long collectionSizeLimit,
+                                                                       @Value("${lsd.dist.db.storageLayout:CAPPED}") StorageLayout storageLayout,
+                                                                       @Value("${lsd.dist.db.retention.days:#{" + DEFAULT_RETENTION_DAYS + "}}") Integer retentionDays,
+                                                                       @Value("${lsd.dist.db.cursorBatchSize:#{" + DEFAULT_CURSOR_BATCH_SIZE + "}}") Integer cursorBatchSize,
+                                                                       @Value("${lsd.dist.db.coveringIndex.enabled:false}") boolean coveringIndex,
+                                                                       @Value("${lsd.dist.db.queryIndexes.enabled:false}") boolean queryIndexes,
+                                                                       @Value("${lsd.dist.db.compression.enabled:false}") boolean compressionEnabled,
+                                                                       @Value("${lsd.dist.db.compression.threshold:#{" + Compression.DEFAULT_THRESHOLD + "}}") Integer compressionThreshold,
+                                                                       @Value("${lsd.dist.db.compression.dictionaries:}") String[] compressionDictionaries,
+                                                                       @Value("${lsd.dist.db.traceCache.enabled:false}") boolean traceCacheEnabled,
+                                                                       @Value("${lsd.dist.db.traceCache.maxSize.bytes:#{" + TraceCache.DEFAULT_MAX_WEIGHT_BYTES + "}}") Long traceCacheMaxSize,
+                                                                       @Value("${lsd.dist.db.traceCache.ttl.millis:#{" + TraceCache.DEFAULT_TTL_MILLIS + "}}") Long traceCacheTtl,
+                                                                       @Value("${lsd.dist.db.spool.enabled:false}") boolean spoolEnabled,
+                                                                       @Value("${lsd.dist.db.spool.directory:#{null}}") String spoolDirectory,
+                                                                       @Value("${spring.application.name:#{null}}") String applicationName,
+                                                                       @Value("${lsd.dist.db.spool.maxSize.bytes:#{" + DiskSpool.DEFAULT_MAX_SIZE_BYTES + "}}") Long spoolMaxSize,
+                                                                       @Value("${lsd.dist.db.spool.segmentSize.bytes:#{" + DiskSpool.DEFAULT_SEGMENT_SIZE_BYTES + "}}") Long spoolSegmentSize,
+                                                                       @Value("${lsd.dist.db.circuitBreaker.failureThreshold:#{" + DEFAULT_FAILURE_THRESHOLD + "}}") Integer failureThreshold,
+                                                                       @Value("${lsd.dist.db.circuitBreaker.probeInterval.millis:#{" + DEFAULT_PROBE_INTERVAL_MILLIS + "}}") Long probeInterval,
+                                                                       @Value("${lsd.dist.db.initialisation.retryDelay.millis:#{" + DEFAULT_INITIAL_RETRY_DELAY_MILLIS + "}}") Long initialRetryDelay,
+                                                                       @Value("${lsd.dist.db.initialisation.maxRetryDelay.millis:#{" + DEFAULT_MAX_RETRY_DELAY_MILLIS + "}}") Long maxRetryDelay,
+                                                                       @Value("${lsd.dist.db.initialisation.pendingWrites.capacity:#{" + DEFAULT_PENDING_WRITE_CAPACITY + "}}") Integer pendingWriteCapacity,
+                                                                       @Value("${lsd.dist.db.initialisation.pendingWrites.policy:BUFFER}") PendingWritePolicy pendingWritePolicy,
+                                                                       @Value("${lsd.dist.db.writeBehind.enabled:false}") boolean writeBehindEnabled,
+                                                                       @Value("${lsd.dist.db.writeBehind.queueCapacity:#{" + DEFAULT_QUEUE_CAPACITY + "}}") Integer queueCapacity,
+                                                                       @Value("${lsd.dist.db.writeBehind.batchSize:#{" + DEFAULT_BATCH_SIZE + "}}") Integer batchSize,
+                                                                       @Value("${lsd.dist.db.writeBehind.flushInterval.millis:#{" + DEFAULT_FLUSH_INTERVAL_MILLIS + "}}") Long flushInterval,
+                                                                       @Value("${lsd.dist.db.writeBehind.overflowPolicy:DROP_OLDEST}") OverflowPolicy overflowPolicy) {
+        final MongoClient sharedClient = sharedClientEnabled ? mongoClients.getIfUnique() : null;
+        if (sharedClientEnabled && sharedClient == null) {
+            log.warn("No single MongoClient bean to share with the LSD MongoDb repository, creating a client of its own");
+        }
+        if (sharedClient != null && !lsdClientSettingsProperties.isEmpty()) {
+            log.warn("Ignoring the lsd.dist.db pool, writeConcern, readPreference and retryWrites properties, as the LSD MongoDb repository shares the application's MongoClient");
+        }
+        final InterceptedDocumentMongoRepository repository = InterceptedDocumentMongoRepository.builder()
+                .mongoDatabase(sharedClient != null ? sharedClient.getDatabase(sharedDatabaseName) : null)
+                .dbConnectionString(dbConnectionString)
+                .trustStoreLocation(trustStoreLocation)
+                .trustStorePassword(trustStorePassword)
+                .connectionTimeout(connectionTimeout)
+                .collectionSizeLimit(collectionSizeLimit)
+                .storageLayout(storageLayout)
+                .retentionDays(retentionDays)
+                .cursorBatchSize(cursorBatchSize)
+                .clientSettingsCustomizer(combined(clientSettingsCustomizers))
+                .metrics(repositoryMetrics.getIfAvailable(() -> RepositoryMetrics.NOOP))
+                .circuitBreaker(new CircuitBreaker(failureThreshold, probeInterval))
+                .initialRetryDelayMillis(initialRetryDelay)
+                .maxRetryDelayMillis(maxRetryDelay)
+                .pendingWriteCapacity(pendingWriteCapacity)
+                .pendingWritePolicy(pendingWritePolicy)
+                .coveringIndex(coveringIndex)
+                .queryIndexes(queryIndexes)
+                .writePolicy(writePolicy.getIfAvailable(() -> WritePolicy.PERSIST_ALL))
+                .traceCache(traceCacheEnabled ? TraceCache.builder().maxWeightBytes(traceCacheMaxSize).ttlMillis(traceCacheTtl).build() : null)
+                .spool(spoolEnabled ? openSpool(spoolDirectory, applicationName, spoolMaxSize, spoolSegmentSize) : null)
+                .compression(compressionEnabled ? Compression.deflate(compressionThreshold, loadDictionaries(compressionDictionaries)) : Compression.NONE)
+                .build();
+        if (writeBehindEnabled) {
+            return new WriteBehindInterceptedDocumentRepository(repository, queueCapacity, batchSize, flushInterval, overflowPolicy);
+        }
+        return repository;
+    }
+
+    /**
+     * A spool that cannot be opened, e.g. because another process holds its directory, is done without rather than
+     * failing the application.
+     */
+    private static DiskSpool openSpool(final String directory, final String applicationName, final Long maxSize, final Long segmentSize) {
+        try {
+            return DiskSpool.builder()
+                    .directory(directory != null ? Paths.get(directory) : null)
+                    .applicationName(applicationName)
+                    .maxSizeBytes(maxSize)
+                    .segmentSizeBytes(segmentSize)
+                    .build();
+        } catch (final IllegalStateException | UncheckedIOException e) {
+            log.error("Running the LSD MongoDb repository without a spool - message:{}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static MongoClientSettingsCustomizer combined(final ObjectProvider<MongoClientSettingsCustomizer> customizers) {
+        return customizers.orderedStream().reduce(MongoClientSettingsCustomizer.NONE, MongoClientSettingsCustomizer::andThen);
+    }
+
+    /**
+     * Parses {@code name=rate} entries, e.g. {@code /health=0,/upload=0.1}.
+     */
+    private static Map<String, Double> samplingRates(final String[] entries) {
+        final Map<String, Double> samplingRates = new LinkedHashMap<>();
+        for (final String entry : entries) {
+            final int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected a sampling rate as name=rate but was: " + entry);
+            }
+            samplingRates.put(entry.substring(0, separator).trim(), Double.valueOf(entry.substring(separator + 1).trim()));
+        }
+        return samplingRates;
+    }
+
+    @SneakyThrows
+    private static List<byte[]> loadDictionaries(final String[] locations) {
+        final ResourceLoader resourceLoader = new DefaultResourceLoader();
+        final List<byte[]> dictionaries = new ArrayList<>();
+        for (final String location : locations) {
+            try (final InputStream inputStream = resourceLoader.getResource(location).getInputStream()) {
+                dictionaries.add(inputStream.readAllBytes());
+            }
+        }
+        return dictionaries;
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class MetricsConfig {
+
+        @Bean
+        @ConditionalOnBean(MeterRegistry.class)
+        @ConditionalOnMissingBean(RepositoryMetrics.class)
+        public RepositoryMetrics repositoryMetrics(MeterRegistry meterRegistry) {
+            return new MicrometerRepositoryMetrics(meterRegistry);
+        }
+    }
+
+    // Nested configurations are processed before the beans of the enclosing class,
+    // so when the reactive repository is enabled the blocking repository above backs off.
+    @Configuration
+    @ConditionalOnClass(name = {"reactor.core.publisher.Flux", "com.mongodb.reactivestreams.client.MongoClient"})
+    @ConditionalOnExpression("${lsd.dist.db.reactive.enabled:false} and !${lsd.dist.db.sharedClient.enabled:false} and '${lsd.dist.db.storageLayout:CAPPED}' == 'CAPPED'")
+    static class ReactiveRepositoryConfig {
+
+        @Bean
+        public InterceptedDocumentReactiveMongoRepository interceptedDocumentReactiveRepository(ObjectProvider<WritePolicy> writePolicy,
+                                                                                                ObjectProvider<MongoClientSettingsCustomizer> clientSettingsCustomizers,
+                                                                                                @Value("${lsd.dist.db.connectionString}") String dbConnectionString,
+                                                                                                @Value("${lsd.dist.db.trustStoreLocation:#{null}}") String trustStoreLocation,
+                                                                                                @Value("${lsd.dist.db.trustStorePassword:#{null}}") String trustStorePassword,
+                                                                                                @Value("${lsd.dist.db.connectionTimeout.millis:#{" + DEFAULT_TIMEOUT_MILLIS + "}}") Integer connectionTimeout,
+                                                                                                @Value("${lsd.dist.db.collectionSizeLimit.megabytes:#{" + DEFAULT_COLLECTION_SIZE_LIMIT_MBS + "}}") Long collectionSizeLimit,
+                                                                                                @Value("${lsd.dist.db.coveringIndex.enabled:false}") boolean coveringIndex,
+                                                                                                @Value("${lsd.dist.db.compression.enabled:false}") boolean compressionEnabled,
+                                                                                                @Value("${lsd.dist.db.compression.threshold:#{" + Compression.DEFAULT_THRESHOLD + "}}") Integer compressionThreshold,
+                                                                                                @Value("${lsd.dist.db.compression.dictionaries:}") String[] compressionDictionaries,
+                                                                                                @Value("${lsd.dist.db.initialisation.retryDelay.millis:#{" + DEFAULT_INITIAL_RETRY_DELAY_MILLIS + "}}") Long initialRetryDelay,
+                                                                                                @Value("${lsd.dist.db.initialisation.maxRetryDelay.millis:#{" + DEFAULT_MAX_RETRY_DELAY_MILLIS + "}}") Long maxRetryDelay) {
+            return InterceptedDocumentReactiveMongoRepository.builder()
+                    .dbConnectionString(dbConnectionString)
+                    .trustStoreLocation(trustStoreLocation)
+                    .trustStorePassword(trustStorePassword)
+                    .connectionTimeout(connectionTimeout)
+                    .collectionSizeLimit(collectionSizeLimit)
+                    .clientSettingsCustomizer(combined(clientSettingsCustomizers))
+                    .coveringIndex(coveringIndex)
+                    .writePolicy(writePolicy.getIfAvailable(() -> WritePolicy.PERSIST_ALL))
+                    .compression(compressionEnabled ? Compression.deflate(compressionThreshold, loadDictionaries(compressionDictionaries)) : Compression.NONE)
+                    .initialRetryDelayMillis(initialRetryDelay)
+                    .maxRetryDelayMillis(maxRetryDelay)
+                    .build();
+        }
     }
 }
@@ -0,0 +1,136 @@
+package io.lsdconsulting.lsd.distributed.mongo.metrics;
+
+import io.lsdconsulting.lsd.distributed.mongo.repository.RepositoryMetrics;
+import io.lsdconsulting.lsd.distributed.mongo.repository.RepositoryState;
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.BaseUnits;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static io.lsdconsulting.lsd.distributed.mongo.repository.RepositoryState.DISABLED;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.RepositoryState.INITIALISING;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Publishes the repository measurements to a Micrometer {@link MeterRegistry}.
+ * <p>
+ * The state gauges of every repository monitored are tagged with a {@code repository} number of their own, so that
+ * repositories sharing a registry do not hide each other. The gauges hold their repository weakly.
+ */
+public class MicrometerRepositoryMetrics implements RepositoryMetrics {
+
+    private static final String PREFIX = "lsd.repository";
+
+    private final MeterRegistry meterRegistry;
+    private final Timer saveTimer;
+    private final Timer findTimer;
+    private final Counter documentsWritten;
+    private final Counter bytesWritten;
+    private final Counter documentsSkipped;
+    private final Counter documentsSpooled;
+    private final Counter documentsReplayed;
+    private final DistributionSummary findResults;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final AtomicInteger monitoredRepositories = new AtomicInteger();
+
+    public MicrometerRepositoryMetrics(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.saveTimer = Timer.builder(PREFIX + ".save")
+                .description("Time taken to persist intercepted interactions")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.findTimer = Timer.builder(PREFIX + ".find")
+                .description("Time taken to retrieve intercepted interactions")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.documentsWritten = Counter.builder(PREFIX + ".documents.written")
+                .description("Number of intercepted interactions persisted")
+                .register(meterRegistry);
+        this.bytesWritten = Counter.builder(PREFIX + ".bytes.written")
+                .description("Encoded size of the intercepted interactions persisted")
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
+        this.documentsSkipped = Counter.builder(PREFIX + ".documents.skipped")
+                .description("Number of intercepted interactions not persisted because of the write policy")
+                .register(meterRegistry);
+        this.documentsSpooled = Counter.builder(PREFIX + ".documents.spooled")
+                .description("Number of intercepted interactions kept on local disk while the database was unavailable")
+                .register(meterRegistry);
+        this.documentsReplayed = Counter.builder(PREFIX + ".documents.replayed")
+                .description("Number of spooled intercepted interactions persisted once the database was available")
+                .register(meterRegistry);
+        this.findResults = DistributionSummary.builder(PREFIX + ".find.results")
+                .description("Number of intercepted interactions returned per query")
+                .register(meterRegistry);
+        this.cacheHits = Counter.builder(PREFIX + ".cache.hits")
+                .description("Number of traces served from the trace cache")
+                .register(meterRegistry);
+        this.cacheMisses = Counter.builder(PREFIX + ".cache.misses")
+                .description("Number of traces looked up in the trace cache and fetched from the database")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void saved(final long durationNanos, final int documents, final long bytes) {
+        saveTimer.record(durationNanos, NANOSECONDS);
+        documentsWritten.increment(documents);
+        bytesWritten.increment(bytes);
+    }
+
+    @Override
+    public void skipped(final int documents) {
+        documentsSkipped.increment(documents);
+    }
+
+    @Override
+    public void spooled(final int documents) {
+        documentsSpooled.increment(documents);
+    }
+
+    @Override
+    public void replayed(final int documents) {
+        documentsReplayed.increment(documents);
+    }
+
+    @Override
+    public void found(final long durationNanos, final int results) {
+        findTimer.record(durationNanos, NANOSECONDS);
+        findResults.record(results);
+    }
+
+    @Override
+    public void cacheHits(final int traces) {
+        cacheHits.increment(traces);
+    }
+
+    @Override
+    public void cacheMisses(final int traces) {
+        cacheMisses.increment(traces);
+    }
+
+    @Override
+    public void failed(final String operation, final Exception exception) {
+        meterRegistry.counter(PREFIX + ".failures", "operation", operation, "exception", exception.getClass().getSimpleName())
+                .increment();
+    }
+
+    @Override
+    public <T> void monitor(final T repository, final Function<T, RepositoryState> state, final Predicate<T> circuitOpen) {
+        final Tags tags = Tags.of("repository", String.valueOf(monitoredRepositories.incrementAndGet()));
+        Gauge.builder(PREFIX + ".initialising", repository, monitored -> state.apply(monitored) == INITIALISING ? 1 : 0)
+                .description("1 while the repository prepares the database in the background, before persisting interactions")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder(PREFIX + ".disabled", repository, monitored -> state.apply(monitored) == DISABLED ? 1 : 0)
+                .description("1 when the repository has no database to connect to and is discarding interactions")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder(PREFIX + ".circuit.open", repository, monitored -> circuitOpen.test(monitored) ? 1 : 0)
+                .description("1 while database calls are being skipped because the database is unavailable")
+                .tags(tags)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,116 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Stops calls to the database after a number of consecutive connectivity failures, so that callers are not held up by
+ * connection timeouts while the database is down. While open, the database is probed in the background and the breaker
+ * closes again as soon as a probe succeeds.
+ */
+@Slf4j
+public class CircuitBreaker implements AutoCloseable {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 1000;
+
+    public enum State {
+        CLOSED,
+        OPEN
+    }
+
+    private final int failureThreshold;
+    private final long probeIntervalMillis;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final ScheduledExecutorService prober;
+
+    private volatile State state = State.CLOSED;
+    private volatile BooleanSupplier probe = () -> true;
+    private ScheduledFuture<?> probing;
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_PROBE_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param failureThreshold consecutive failures after which the breaker opens; zero or less disables the breaker
+     */
+    public CircuitBreaker(final int failureThreshold, final long probeIntervalMillis) {
+        this.failureThreshold = failureThreshold;
+        this.probeIntervalMillis = probeIntervalMillis;
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "lsd-mongo-circuit-breaker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the check run in the background while the breaker is open. The breaker closes once it returns true.
+     */
+    void probeWith(final BooleanSupplier probe) {
+        this.probe = probe;
+    }
+
+    public boolean allowRequest() {
+        return state == State.CLOSED;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    public void recordFailure() {
+        if (failureThreshold > 0 && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        prober.shutdownNow();
+    }
+
+    private synchronized void open() {
+        if (state == State.OPEN || prober.isShutdown()) {
+            return;
+        }
+        log.warn("The LSD MongoDb repository is unavailable - skipping database calls after {} consecutive failures", consecutiveFailures.get());
+        state = State.OPEN;
+        probing = prober.scheduleWithFixedDelay(this::probe, probeIntervalMillis, probeIntervalMillis, MILLISECONDS);
+    }
+
+    private void probe() {
+        boolean available;
+        try {
+            available = probe.getAsBoolean();
+        } catch (final RuntimeException e) {
+            log.debug("The LSD MongoDb repository is still unavailable - message:{}", e.getMessage());
+            available = false;
+        }
+        if (available) {
+            closeCircuit();
+        }
+    }
+
+    private synchronized void closeCircuit() {
+        log.info("The LSD MongoDb repository is available again");
+        consecutiveFailures.set(0);
+        state = State.CLOSED;
+        if (probing != null) {
+            probing.cancel(false);
+            probing = null;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.RawBsonDocument;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
+
+/**
+ * An append-only log of encoded interactions on local disk, holding the writes the database could not take until
+ * they are replayed.
+ * <p>
+ * The log is split into numbered segment files of records, each an encoded document preceded by its length and
+ * checksum. A new segment is started whenever the current one is full and every time the spool is opened, so a
+ * record torn by a crash is always at the end of a segment that is no longer written to; reading skips from a
+ * damaged record to the next segment. The position replayed up to is kept in an offset file, replaced atomically
+ * after every batch, and segments are deleted once replayed. Replay is at least once: a batch persisted just
+ * before a crash is replayed again, which is why the repository spools documents with their ids already assigned.
+ * <p>
+ * Once the segments take up more than {@code maxSizeBytes}, the oldest are dropped, as with the in-memory buffers.
+ * The directory is locked, and cannot be shared between processes. Unless given one, the spool takes a directory
+ * under {@code java.io.tmpdir} named after the {@code applicationName}, so that different applications on a host do
+ * not contend for it.
+ */
+@Slf4j
+public class DiskSpool implements AutoCloseable {
+
+    public static final long DEFAULT_MAX_SIZE_BYTES = 1024L * 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_SIZE_BYTES = 64L * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String OFFSET_FILE = "offset";
+    private static final String LOCK_FILE = "lock";
+    private static final String DEFAULT_DIRECTORY_NAME = "lsd-spool";
+    private static final int HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final long maxSizeBytes;
+    private final long segmentSizeBytes;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    /**
+     * Segment sizes by sequence number, oldest first.
+     */
+    private final TreeMap<Long, Long> segments = new TreeMap<>();
+
+    private long size;
+    private long writeSequence;
+    private FileChannel writer;
+    private long readSequence;
+    private long readPosition;
+
+    /**
+     * @throws IllegalStateException if the directory is locked by another spool
+     */
+    @Builder
+    private DiskSpool(final Path directory, final String applicationName, final Long maxSizeBytes, final Long segmentSizeBytes) {
+        this.directory = directory != null ? directory : defaultDirectory(applicationName);
+        this.maxSizeBytes = defaultIfNull(maxSizeBytes, DEFAULT_MAX_SIZE_BYTES);
+        this.segmentSizeBytes = Math.min(defaultIfNull(segmentSizeBytes, DEFAULT_SEGMENT_SIZE_BYTES), this.maxSizeBytes / 2);
+        try {
+            Files.createDirectories(this.directory);
+            lockChannel = FileChannel.open(this.directory.resolve(LOCK_FILE), CREATE, WRITE);
+            lock = tryLock(lockChannel);
+            if (lock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("The LSD spool directory is already in use: " + this.directory);
+            }
+            open();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to open the LSD spool in " + this.directory, e);
+        }
+    }
+
+    static Path defaultDirectory(final String applicationName) {
+        final String name = applicationName == null || applicationName.isBlank()
+                ? DEFAULT_DIRECTORY_NAME
+                : DEFAULT_DIRECTORY_NAME + "-" + applicationName.replaceAll("[^A-Za-z0-9._-]", "_");
+        return Paths.get(System.getProperty("java.io.tmpdir"), name);
+    }
+
+    private static FileLock tryLock(final FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (final OverlappingFileLockException e) {
+            // Held by another spool in this process
+            return null;
+        }
+    }
+
+    private void open() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).forEach(file -> {
+                final String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), Files.size(file));
+                } catch (final NumberFormatException | IOException e) {
+                    log.warn("Ignoring the unexpected file {} in the LSD spool", file);
+                }
+            });
+        }
+        readOffset();
+        for (final Long sequence : new ArrayList<>(segments.headMap(readSequence).keySet())) {
+            deleteSegment(sequence);
+        }
+        size = segments.values().stream().mapToLong(Long::longValue).sum();
+        startSegment(segments.isEmpty() ? readSequence : segments.lastKey() + 1);
+        if (size > 0) {
+            log.info("Found {} bytes of interactions in the LSD spool to replay", size);
+        }
+    }
+
+    /**
+     * Appends the documents to the spool, dropping the oldest segments if the spool would outgrow its maximum size.
+     *
+     * @return false if the documents could not be written
+     */
+    public synchronized boolean append(final List<RawBsonDocument> documents) {
+        try {
+            for (final RawBsonDocument document : documents) {
+                final ByteBuffer record = record(document);
+                if (segments.get(writeSequence) + record.remaining() > segmentSizeBytes && segments.get(writeSequence) > 0) {
+                    writer.close();
+                    startSegment(writeSequence + 1);
+                }
+                makeRoomFor(record.remaining());
+                final long written = record.remaining();
+                while (record.hasRemaining()) {
+                    writer.write(record);
+                }
+                segments.merge(writeSequence, written, Long::sum);
+                size += written;
+            }
+            return true;
+        } catch (final IOException e) {
+            log.error("Failed to append {} interceptedInteractions to the LSD spool - message:{}", documents.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads up to {@code maxDocuments} documents from where replay last got to, without moving past them until the
+     * batch is {@link #commit committed}.
+     */
+    public synchronized Batch read(final int maxDocuments) {
+        final List<RawBsonDocument> documents = new ArrayList<>();
+        long sequence = readSequence;
+        long position = readPosition;
+        try {
+            while (documents.size() < maxDocuments && segments.containsKey(sequence)) {
+                if (position >= segments.get(sequence)) {
+                    if (sequence == writeSequence) {
+                        break;
+                    }
+                    sequence = segments.higherKey(sequence);
+                    position = 0;
+                    continue;
+                }
+                try (final FileChannel channel = FileChannel.open(segmentPath(sequence), READ)) {
+                    channel.position(position);
+                    while (documents.size() < maxDocuments && position < segments.get(sequence)) {
+                        final RawBsonDocument document = readRecord(channel);
+                        if (document == null) {
+                            log.warn("Skipping a damaged record and the rest of the LSD spool segment {}", segmentPath(sequence));
+                            if (sequence == writeSequence) {
+                                writer.close();
+                                startSegment(writeSequence + 1);
+                            }
+                            position = segments.get(sequence);
+                            break;
+                        }
+                        documents.add(document);
+                        position = channel.position();
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            log.error("Failed to read from the LSD spool - message:{}", e.getMessage());
+        }
+        return new Batch(documents, sequence, position);
+    }
+
+    /**
+     * Moves past a replayed batch, deleting the segments it finished.
+     */
+    public synchronized void commit(final Batch batch) {
+        if (!segments.containsKey(batch.getSequence())) {
+            // Dropped to make room while the batch was replayed, which already moved the offset on
+            return;
+        }
+        try {
+            readSequence = batch.getSequence();
+            readPosition = batch.getPosition();
+            writeOffset();
+            for (final Long sequence : new ArrayList<>(segments.headMap(readSequence).keySet())) {
+                deleteSegment(sequence);
+            }
+        } catch (final IOException e) {
+            log.error("Failed to record the LSD spool offset - message:{}", e.getMessage());
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return readSequence == writeSequence && readPosition >= segments.get(writeSequence);
+    }
+
+    /**
+     * The bytes taken up by the segment files.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+            lock.release();
+            lockChannel.close();
+        } catch (final IOException e) {
+            log.warn("Failed to close the LSD spool - message:{}", e.getMessage());
+        }
+    }
+
+    private void makeRoomFor(final long bytes) throws IOException {
+        while (size + bytes > maxSizeBytes && segments.firstKey() != writeSequence) {
+            final long dropped = segments.firstKey();
+            log.warn("The LSD spool is full, dropping {} bytes of the oldest interactions", segments.get(dropped));
+            deleteSegment(dropped);
+            if (readSequence <= dropped) {
+                readSequence = segments.firstKey();
+                readPosition = 0;
+                writeOffset();
+            }
+        }
+    }
+
+    private void startSegment(final long sequence) throws IOException {
+        writer = FileChannel.open(segmentPath(sequence), CREATE_NEW, WRITE, APPEND);
+        writeSequence = sequence;
+        segments.put(sequence, 0L);
+    }
+
+    private void deleteSegment(final long sequence) throws IOException {
+        final Long segmentSize = segments.remove(sequence);
+        if (segmentSize != null) {
+            size -= segmentSize;
+        }
+        Files.deleteIfExists(segmentPath(sequence));
+    }
+
+    private void readOffset() throws IOException {
+        final Path offsetFile = directory.resolve(OFFSET_FILE);
+        readSequence = segments.isEmpty() ? 0 : segments.firstKey();
+        readPosition = 0;
+        if (Files.exists(offsetFile)) {
+            final String[] offset = Files.readString(offsetFile, StandardCharsets.US_ASCII).trim().split(":");
+            try {
+                readSequence = Long.parseLong(offset[0]);
+                readPosition = Long.parseLong(offset[1]);
+            } catch (final NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                log.warn("Ignoring the damaged LSD spool offset file, replaying every segment");
+            }
+        }
+        if (!segments.containsKey(readSequence)) {
+            final Long next = segments.ceilingKey(readSequence);
+            readSequence = next != null ? next : segments.isEmpty() ? readSequence : segments.lastKey() + 1;
+            readPosition = 0;
+        }
+    }
+
+    private void writeOffset() throws IOException {
+        final Path temporary = directory.resolve(OFFSET_FILE + ".tmp");
+        try (final FileChannel channel = FileChannel.open(temporary, CREATE, WRITE)) {
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap((readSequence + ":" + readPosition).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(OFFSET_FILE), ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private Path segmentPath(final long sequence) {
+        return directory.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+    }
+
+    private static ByteBuffer record(final RawBsonDocument document) {
+        final ByteBuffer bytes = document.getByteBuffer().asNIO();
+        final CRC32 checksum = new CRC32();
+        checksum.update(bytes.duplicate());
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bytes.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(bytes.remaining());
+        record.putInt((int) checksum.getValue());
+        record.put(bytes);
+        return record.flip();
+    }
+
+    /**
+     * The next record, or null if it is incomplete or does not match its checksum.
+     */
+    private static RawBsonDocument readRecord(final FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(channel, header)) {
+            return null;
+        }
+        final int length = header.getInt(0);
+        final int expectedChecksum = header.getInt(4);
+        if (length <= 0 || length > channel.size() - channel.position()) {
+            return null;
+        }
+        final ByteBuffer bytes = ByteBuffer.allocate(length);
+        if (!readFully(channel, bytes)) {
+            return null;
+        }
+        final CRC32 checksum = new CRC32();
+        checksum.update(bytes.array());
+        if ((int) checksum.getValue() != expectedChecksum) {
+            return null;
+        }
+        return new RawBsonDocument(bytes.array());
+    }
+
+    private static boolean readFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Documents read from the spool, and the position just past them.
+     */
+    @Value
+    public static class Batch {
+        List<RawBsonDocument> documents;
+        long sequence;
+        long position;
+    }
+}
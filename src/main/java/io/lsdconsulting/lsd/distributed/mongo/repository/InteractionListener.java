@@ -0,0 +1,16 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+
+/**
+ * Receives the interactions of an {@link InteractionSubscription}, one at a time on the subscription's own thread,
+ * in the order they were persisted.
+ */
+@FunctionalInterface
+public interface InteractionListener {
+
+    /**
+     * @param resumeToken resumes a later subscription right after this interaction
+     */
+    void onInteraction(InterceptedInteraction interceptedInteraction, String resumeToken);
+}
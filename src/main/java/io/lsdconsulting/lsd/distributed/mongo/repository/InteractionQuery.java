@@ -0,0 +1,40 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Selects intercepted interactions by the time they were created and the service they involve, rather than by trace.
+ * Criteria left unset match every interaction.
+ * <p>
+ * Results come back in pages ordered by {@code createdAt} and then by id. The next page is requested by passing the
+ * {@link InterceptedInteractionPage#getNextPageToken() token} of the previous one, which resumes right after its last
+ * interaction however many documents precede it.
+ */
+@Value
+@Builder(toBuilder = true)
+public class InteractionQuery {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Inclusive.
+     */
+    Instant from;
+    /**
+     * Exclusive.
+     */
+    Instant to;
+    String serviceName;
+    String target;
+    String path;
+    String httpStatus;
+    Integer pageSize;
+    String pageToken;
+
+    public int getPageSize() {
+        return pageSize != null ? pageSize : DEFAULT_PAGE_SIZE;
+    }
+}
@@ -0,0 +1,45 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import java.util.function.Consumer;
+
+/**
+ * A live feed of newly persisted interactions, open until {@link #close() closed}.
+ */
+public class InteractionSubscription implements AutoCloseable {
+
+    private final Consumer<InteractionSubscription> onClose;
+
+    private volatile String resumeToken;
+    private volatile boolean active = true;
+
+    InteractionSubscription(final String resumeToken, final Consumer<InteractionSubscription> onClose) {
+        this.resumeToken = resumeToken;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Resumes a later subscription where this one got to, or null if it has not got anywhere yet.
+     */
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    void setResumeToken(final String resumeToken) {
+        this.resumeToken = resumeToken;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Stops delivering interactions. The tailing cursor is released within a second.
+     */
+    @Override
+    public void close() {
+        if (active) {
+            active = false;
+            onClose.accept(this);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Selects the newly persisted interactions pushed to a subscriber, by trace or by the service they involve.
+ * Criteria left empty match every interaction.
+ * <p>
+ * Without a resume token the subscription starts with the interactions persisted after it was opened. Given the
+ * {@link InteractionSubscription#getResumeToken() token} of an earlier subscription, it carries on right after the
+ * last interaction that one delivered, for as long as the database still holds it.
+ */
+@Value
+@Builder(toBuilder = true)
+public class InteractionSubscriptionQuery {
+
+    @Singular
+    List<String> traceIds;
+    @Singular
+    List<String> serviceNames;
+    String resumeToken;
+}
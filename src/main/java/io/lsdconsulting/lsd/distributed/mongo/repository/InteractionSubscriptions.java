@@ -0,0 +1,238 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import com.mongodb.CursorType;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonParseException;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.in;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Tails newly persisted interactions for {@link InteractionSubscription subscriptions}, each on a thread of its own.
+ * <p>
+ * Interactions are read from a change stream where the deployment has one, i.e. a replica set or sharded cluster,
+ * and the resume token is the change stream's. A standalone server has no change streams, so there the capped
+ * collection is tailed instead, and the resume token is the id of the last interaction delivered. After a failure the subscription reconnects from its resume token.
+ */
+@Slf4j
+class InteractionSubscriptions implements AutoCloseable {
+
+    static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final long MAX_AWAIT_MILLIS = 1000;
+    private static final int CHANGE_STREAM_NOT_SUPPORTED = 40573;
+    private static final long RESUME_CLOCK_SKEW_MILLIS = 60_000;
+
+    private final InterceptedInteractionCollections collections;
+    private final Codec<InterceptedInteraction> codec;
+    private final int batchSize;
+    private final BooleanSupplier available;
+    private final Set<InteractionSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor;
+
+    InteractionSubscriptions(final InterceptedInteractionCollections collections, final Codec<InterceptedInteraction> codec,
+                             final int batchSize, final BooleanSupplier available) {
+        this.collections = collections;
+        this.codec = codec;
+        this.batchSize = batchSize;
+        this.available = available;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "lsd-mongo-subscription-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @throws IllegalArgumentException if the resume token was not issued by a subscription
+     */
+    InteractionSubscription subscribe(final InteractionSubscriptionQuery query, final InteractionListener listener) {
+        if (query.getResumeToken() != null && !ObjectId.isValid(query.getResumeToken())) {
+            parseResumeToken(query.getResumeToken());
+        }
+        final InteractionSubscription subscription = new InteractionSubscription(query.getResumeToken(), subscriptions::remove);
+        subscriptions.add(subscription);
+        executor.execute(() -> tail(query, listener, subscription));
+        return subscription;
+    }
+
+    @Override
+    public void close() {
+        new ArrayList<>(subscriptions).forEach(InteractionSubscription::close);
+        executor.shutdownNow();
+    }
+
+    private void tail(final InteractionSubscriptionQuery query, final InteractionListener listener, final InteractionSubscription subscription) {
+        final String resumeToken = subscription.getResumeToken();
+        final Date startedAt = new Date();
+        boolean changeStream = resumeToken == null || !ObjectId.isValid(resumeToken);
+        while (subscription.isActive()) {
+            try {
+                if (!available.getAsBoolean()) {
+                    MILLISECONDS.sleep(RECONNECT_DELAY_MILLIS);
+                } else if (changeStream) {
+                    tailChangeStream(query, listener, subscription);
+                } else {
+                    tailCappedCollection(query, listener, subscription, startedAt);
+                }
+            } catch (final MongoCommandException e) {
+                if (!changeStream || e.getErrorCode() != CHANGE_STREAM_NOT_SUPPORTED) {
+                    reconnectAfter(e);
+                } else if (collections.cappedCollection() == null) {
+                    log.error("Cannot subscribe to interceptedInteractions - the database has no change streams and the storage layout is not capped");
+                    subscription.close();
+                } else {
+                    log.info("The database has no change streams, tailing the capped LSD MongoDb collection instead");
+                    changeStream = false;
+                    if (subscription.getResumeToken() != null && !ObjectId.isValid(subscription.getResumeToken())) {
+                        subscription.setResumeToken(null);
+                    }
+                }
+            } catch (final MongoException e) {
+                reconnectAfter(e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                subscription.close();
+            } catch (final RuntimeException e) {
+                log.error("Closing the subscription to interceptedInteractions due to exception - message:{}", e.getMessage(), e);
+                subscription.close();
+            }
+        }
+    }
+
+    private void tailChangeStream(final InteractionSubscriptionQuery query, final InteractionListener listener,
+                                  final InteractionSubscription subscription) {
+        final List<Bson> pipeline = List.of(match(criteria(query, "fullDocument.", eq("operationType", "insert"))));
+        ChangeStreamIterable<RawBsonDocument> changeStream = collections.watch(pipeline).batchSize(batchSize).maxAwaitTime(MAX_AWAIT_MILLIS, MILLISECONDS);
+        if (subscription.getResumeToken() != null) {
+            changeStream = changeStream.resumeAfter(parseResumeToken(subscription.getResumeToken()));
+        }
+        try (final MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> cursor = changeStream.cursor()) {
+            while (subscription.isActive()) {
+                final ChangeStreamDocument<RawBsonDocument> change = cursor.tryNext();
+                if (change != null && change.getFullDocument() != null) {
+                    deliver(listener, subscription, change.getFullDocument(), change.getResumeToken().toJson());
+                } else if (cursor.getResumeToken() != null) {
+                    // Moves past changes that were filtered out, so resuming need not scan them again
+                    subscription.setResumeToken(cursor.getResumeToken().toJson());
+                }
+            }
+        }
+    }
+
+    /**
+     * A tailable cursor dies when it reaches the end of an empty collection, or falls behind the capped
+     * collection's eviction; it is then reopened after the last interaction delivered.
+     * <p>
+     * Ids are generated by the writers, so they only roughly follow insertion order. Resuming therefore rereads, in
+     * insertion order, from a little before the last interaction delivered and skips up to it. Should that one have
+     * been evicted in the meantime, the later interactions reread are delivered instead.
+     */
+    private void tailCappedCollection(final InteractionSubscriptionQuery query, final InteractionListener listener,
+                                      final InteractionSubscription subscription, final Date startedAt) throws InterruptedException {
+        final ObjectId last = subscription.getResumeToken() != null ? new ObjectId(subscription.getResumeToken()) : null;
+        final Date from = last != null ? new Date(last.getDate().getTime() - RESUME_CLOCK_SKEW_MILLIS) : startedAt;
+        final List<RawBsonDocument> reread = new ArrayList<>();
+        boolean caughtUp = last == null;
+        try (final MongoCursor<RawBsonDocument> cursor = collections.cappedCollection()
+                .find(criteria(query, "", gte("_id", ObjectId.getSmallestWithDate(from))))
+                .cursorType(CursorType.TailableAwait)
+                .maxAwaitTime(MAX_AWAIT_MILLIS, MILLISECONDS)
+                .batchSize(batchSize)
+                .iterator()) {
+            while (subscription.isActive()) {
+                final RawBsonDocument document = cursor.tryNext();
+                if (document != null && caughtUp) {
+                    deliver(listener, subscription, document, idOf(document));
+                } else if (document != null) {
+                    caughtUp = last.toHexString().equals(idOf(document));
+                    if (!caughtUp && document.getObjectId("_id").getValue().compareTo(last) > 0) {
+                        reread.add(document);
+                    }
+                } else if (!caughtUp) {
+                    log.warn("The last interceptedInteraction delivered to the subscription has been evicted, some may have been missed");
+                    reread.forEach(missed -> deliver(listener, subscription, missed, idOf(missed)));
+                    caughtUp = true;
+                } else if (cursor.getServerCursor() == null) {
+                    break;
+                }
+            }
+        }
+        if (subscription.isActive()) {
+            MILLISECONDS.sleep(MAX_AWAIT_MILLIS);
+        }
+    }
+
+    private static String idOf(final RawBsonDocument document) {
+        return document.getObjectId("_id").getValue().toHexString();
+    }
+
+    private void deliver(final InteractionListener listener, final InteractionSubscription subscription,
+                         final RawBsonDocument document, final String resumeToken) {
+        if (!subscription.isActive()) {
+            // Left for a later subscription resuming from the token
+            return;
+        }
+        subscription.setResumeToken(resumeToken);
+        try {
+            listener.onInteraction(document.decode(codec), resumeToken);
+        } catch (final RuntimeException e) {
+            log.warn("The subscriber failed to handle an interceptedInteraction - message:{}", e.getMessage(), e);
+        }
+    }
+
+    private void reconnectAfter(final MongoException e) {
+        log.warn("Lost the subscription to interceptedInteractions, reconnecting in {} ms - message:{}", RECONNECT_DELAY_MILLIS, e.getMessage());
+        try {
+            MILLISECONDS.sleep(RECONNECT_DELAY_MILLIS);
+        } catch (final InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Bson criteria(final InteractionSubscriptionQuery query, final String prefix, final Bson position) {
+        final List<Bson> filters = new ArrayList<>();
+        filters.add(position);
+        if (!query.getTraceIds().isEmpty()) {
+            filters.add(in(prefix + "traceId", query.getTraceIds()));
+        }
+        if (!query.getServiceNames().isEmpty()) {
+            filters.add(in(prefix + "serviceName", query.getServiceNames()));
+        }
+        return filters.size() == 1 ? filters.get(0) : and(filters);
+    }
+
+    private static BsonDocument parseResumeToken(final String resumeToken) {
+        try {
+            return BsonDocument.parse(resumeToken);
+        } catch (final JsonParseException e) {
+            throw new IllegalArgumentException("Invalid resume token: " + resumeToken, e);
+        }
+    }
+}
@@ -1,53 +1,167 @@
 package io.lsdconsulting.lsd.distributed.mongo.repository;
 
-import com.mongodb.ConnectionString;
-import com.mongodb.MongoClientSettings;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.CreateCollectionOptions;
-import com.mongodb.connection.SslSettings;
+import com.mongodb.client.model.InsertManyOptions;
 import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
 import io.lsdconsulting.lsd.distributed.access.repository.InterceptedDocumentRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.Compression;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.InterceptedInteractionCodec;
 import io.lsdconsulting.lsd.distributed.mongo.repository.codec.TypeCodec;
 import io.lsdconsulting.lsd.distributed.mongo.repository.codec.ZonedDateTimeCodec;
-import lombok.SneakyThrows;
+import io.lsdconsulting.lsd.distributed.mongo.repository.policy.WritePolicy;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.http.ssl.SSLContextBuilder;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.codecs.configuration.CodecRegistry;
-import org.springframework.core.io.ClassPathResource;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.conversions.Bson;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
 
-import java.io.InputStream;
-import java.security.KeyStore;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static com.mongodb.MongoClientSettings.getDefaultCodecRegistry;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.gte;
 import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Filters.or;
 import static com.mongodb.client.model.Indexes.ascending;
-import static java.lang.System.currentTimeMillis;
+import static com.mongodb.client.model.Projections.include;
+import static java.lang.System.nanoTime;
+import static java.time.temporal.ChronoUnit.DAYS;
+import static java.util.Comparator.nullsFirst;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
-import static org.apache.commons.lang3.StringUtils.isBlank;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.StreamSupport.stream;
+import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 import static org.bson.codecs.configuration.CodecRegistries.*;
-import static org.bson.codecs.pojo.PojoCodecProvider.builder;
 
 @Slf4j
-public class InterceptedDocumentMongoRepository implements InterceptedDocumentRepository {
+public class InterceptedDocumentMongoRepository implements InterceptedDocumentRepository, AutoCloseable {
 
     public static final int DEFAULT_TIMEOUT_MILLIS = 500;
     public static final long DEFAULT_COLLECTION_SIZE_LIMIT_MBS = 1000 * 10L; // 10Gb
-    private static final String DATABASE_NAME = "lsd";
-    private static final String COLLECTION_NAME = "interceptedInteraction";
+    public static final int DEFAULT_CURSOR_BATCH_SIZE = 100;
+    static final String DATABASE_NAME = "lsd";
+    static final String COLLECTION_NAME = "interceptedInteraction";
+
+    private static final Bson SUMMARY_PROJECTION = include(InterceptedInteractionSummary.FIELDS);
+    private static final String PAGE_TOKEN_SEPARATOR = ":";
+    private static final Comparator<InterceptedInteraction> CREATION_ORDER = Comparator
+            .comparing(InterceptedInteraction::getCreatedAt, nullsFirst(Comparator.<ZonedDateTime>naturalOrder()));
+    private static final Comparator<ServiceEdge> SERVICE_EDGE_ORDER = Comparator
+            .comparing(ServiceEdge::getServiceName, nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(ServiceEdge::getTarget, nullsFirst(Comparator.<String>naturalOrder()));
 
     public static final CodecRegistry pojoCodecRegistry = fromRegistries(
             getDefaultCodecRegistry(),
-            fromCodecs(new ZonedDateTimeCodec(), new TypeCodec()),
-            fromProviders(builder().automatic(true).build())
+            fromCodecs(new ZonedDateTimeCodec(), new TypeCodec(), new InterceptedInteractionCodec()),
+            fromProviders(PojoCodecProvider.builder().automatic(true).build())
     );
 
-    private final MongoCollection<InterceptedInteraction> interceptedInteractions;
+    public static final long DEFAULT_INITIAL_RETRY_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_RETRY_DELAY_MILLIS = 60_000;
+    public static final int DEFAULT_PENDING_WRITE_CAPACITY = 1000;
+    public static final PendingWritePolicy DEFAULT_PENDING_WRITE_POLICY = PendingWritePolicy.BUFFER;
+    public static final StorageLayout DEFAULT_STORAGE_LAYOUT = StorageLayout.CAPPED;
+    public static final int DEFAULT_RETENTION_DAYS = 7;
+    private static final long SPOOL_REPLAY_INTERVAL_MILLIS = 1000;
+    private static final int SPOOL_REPLAY_BATCH_SIZE = 500;
+    private static final int SPOOL_QUEUE_CAPACITY = 10_000;
+    private static final int MAX_BUCKET_READERS = 8;
+    private static final long DROP_WARNING_INTERVAL_NANOS = SECONDS.toNanos(10);
+
+    private final MongoClient ownedClient;
+    private final MongoDatabase database;
+    private final InterceptedInteractionCollections collections;
+    private final boolean queryIndexes;
+    private final int cursorBatchSize;
+    private final RepositoryMetrics metrics;
+    private final CircuitBreaker circuitBreaker;
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Queries the daily buckets concurrently; null with the single collection layouts.
+     */
+    private final ExecutorService bucketReaders;
+    private final long maxRetryDelayMillis;
+    private final PendingWritePolicy pendingWritePolicy;
+    private final BlockingQueue<InterceptedInteraction> pendingWrites;
+    private final Compression compression;
+    private final CodecRegistry codecRegistry;
+    private final InterceptedInteractionCodec interceptedInteractionCodec;
+    private final WritePolicy writePolicy;
+    private final TraceCache traceCache;
+    private final DiskSpool spool;
+    /**
+     * Documents waiting to be appended to the spool on the scheduler, so that callers never wait for the disk.
+     */
+    private final BlockingQueue<RawBsonDocument> spoolQueue = new ArrayBlockingQueue<>(SPOOL_QUEUE_CAPACITY);
+    private final AtomicBoolean spoolQueueDrainScheduled = new AtomicBoolean();
+    private final InteractionSubscriptions subscriptions;
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong nextDropWarningNanos = new AtomicLong(nanoTime());
+
+    private volatile boolean active;
+    private volatile boolean closed;
+    private long retryDelayMillis;
 
     public InterceptedDocumentMongoRepository(final String dbConnectionString, final Integer connectionTimeout,
                                               final Long collectionSizeLimit) {
@@ -57,116 +171,991 @@ public class InterceptedDocumentMongoRepository implements InterceptedDocumentRe
     public InterceptedDocumentMongoRepository(final String dbConnectionString, final String trustStoreLocation,
                                               final String trustStorePassword, final Integer connectionTimeout,
                                               final Long collectionSizeLimit) {
-
-        MongoCollection<InterceptedInteraction> temp;
-        try {
-            final MongoClient mongoClient = prepareMongoClient(dbConnectionString, trustStoreLocation, trustStorePassword, connectionTimeout);
-            temp = prepareInterceptedInteractionCollection(mongoClient, collectionSizeLimit);
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-            temp = null;
-        }
-        interceptedInteractions = temp;
+        this(builder()
+                .dbConnectionString(dbConnectionString)
+                .trustStoreLocation(trustStoreLocation)
+                .trustStorePassword(trustStorePassword)
+                .connectionTimeout(connectionTimeout)
+                .collectionSizeLimit(collectionSizeLimit));
     }
 
-    private MongoClient prepareMongoClient(final String dbConnectionString, final String trustStoreLocation, final String trustStorePassword, int connectionTimeout) {
-        final MongoClientSettings.Builder builder = MongoClientSettings.builder()
-                .applyToSocketSettings(b -> {
-                    b.connectTimeout(connectionTimeout, MILLISECONDS);
-                    b.readTimeout(connectionTimeout, MILLISECONDS);
-                })
-                .applyToClusterSettings( b -> b.serverSelectionTimeout(connectionTimeout, MILLISECONDS))
-                .applyConnectionString(new ConnectionString(dbConnectionString));
+    private InterceptedDocumentMongoRepository(final InterceptedDocumentMongoRepositoryBuilder builder) {
 
-        if (!isBlank(trustStoreLocation) && !isBlank(trustStorePassword)) {
-            builder.applyToSslSettings(sslSettingsBuilder -> loadCustomTrustStore(sslSettingsBuilder, trustStoreLocation, trustStorePassword));
+        this.cursorBatchSize = defaultIfNull(builder.cursorBatchSize, DEFAULT_CURSOR_BATCH_SIZE);
+        this.queryIndexes = defaultIfNull(builder.queryIndexes, false);
+        this.metrics = defaultIfNull(builder.metrics, RepositoryMetrics.NOOP);
+        this.circuitBreaker = builder.circuitBreaker != null ? builder.circuitBreaker : new CircuitBreaker();
+        this.retryDelayMillis = defaultIfNull(builder.initialRetryDelayMillis, DEFAULT_INITIAL_RETRY_DELAY_MILLIS);
+        this.maxRetryDelayMillis = defaultIfNull(builder.maxRetryDelayMillis, DEFAULT_MAX_RETRY_DELAY_MILLIS);
+        this.pendingWritePolicy = defaultIfNull(builder.pendingWritePolicy, DEFAULT_PENDING_WRITE_POLICY);
+        this.pendingWrites = new ArrayBlockingQueue<>(defaultIfNull(builder.pendingWriteCapacity, DEFAULT_PENDING_WRITE_CAPACITY));
+        this.compression = defaultIfNull(builder.compression, Compression.NONE);
+        this.interceptedInteractionCodec = new InterceptedInteractionCodec(this.compression);
+        this.codecRegistry = fromRegistries(
+                fromCodecs(this.interceptedInteractionCodec),
+                pojoCodecRegistry
+        );
+        this.writePolicy = defaultIfNull(builder.writePolicy, WritePolicy.PERSIST_ALL);
+        this.traceCache = builder.traceCache;
+        this.spool = builder.spool;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "lsd-mongo-repository");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final StorageLayout storageLayout = defaultIfNull(builder.storageLayout, DEFAULT_STORAGE_LAYOUT);
+        final int retentionDays = defaultIfNull(builder.retentionDays, DEFAULT_RETENTION_DAYS);
+        this.bucketReaders = storageLayout != StorageLayout.DAILY_BUCKETS ? null
+                : Executors.newFixedThreadPool(Math.min(retentionDays + 2, MAX_BUCKET_READERS), runnable -> {
+                    final Thread thread = new Thread(runnable, "lsd-mongo-bucket-reader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        MongoClient tempClient = null;
+        if (builder.mongoDatabase == null && builder.mongoClient == null) {
+            try {
+                tempClient = MongoClients.create(MongoClientSettingsFactory.create(builder.dbConnectionString, builder.trustStoreLocation, builder.trustStorePassword,
+                        defaultIfNull(builder.connectionTimeout, DEFAULT_TIMEOUT_MILLIS), defaultIfNull(builder.clientSettingsCustomizer, MongoClientSettingsCustomizer.NONE)));
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        ownedClient = tempClient;
+        if (builder.mongoDatabase != null) {
+            database = builder.mongoDatabase;
+        } else {
+            final MongoClient client = builder.mongoClient != null ? builder.mongoClient : ownedClient;
+            database = client != null ? client.getDatabase(DATABASE_NAME) : null;
         }
+        collections = database == null ? null : new InterceptedInteractionCollections(database, codecRegistry,
+                storageLayout, defaultIfNull(builder.collectionSizeLimit, DEFAULT_COLLECTION_SIZE_LIMIT_MBS),
+                retentionDays, defaultIfNull(builder.coveringIndex, false), this.queryIndexes, Clock.systemUTC(), scheduler);
+        subscriptions = collections == null ? null : new InteractionSubscriptions(collections, interceptedInteractionCodec, this.cursorBatchSize, this::isActive);
+        this.circuitBreaker.probeWith(this::ping);
+        this.metrics.monitor(this, InterceptedDocumentMongoRepository::getState,
+                repository -> repository.getCircuitBreakerState() == CircuitBreaker.State.OPEN);
+        if (database != null) {
+            scheduler.execute(this::initialise);
+        }
+    }
 
-//    TODO We should also support other AuthenticationMechanisms
-//    String user = "xxxx"; // the user name
-//    String database = "admin"; // the name of the database in which the user is defined
-//    char[] password = "xxxx".toCharArray(); // the password as a character array
-//    MongoCredential credential = MongoCredential.createCredential(user, database, password);
+    public static InterceptedDocumentMongoRepositoryBuilder builder() {
+        return new InterceptedDocumentMongoRepositoryBuilder();
+    }
 
-        return MongoClients.create(builder
-//            .credential(credential)
-                .retryWrites(true)
-                .build());
+    private void initialise() {
+        try {
+            collections.prepare();
+            if (closed) {
+                return;
+            }
+            active = true;
+            log.info("The LSD MongoDb repository is active");
+            scheduler.scheduleWithFixedDelay(this::housekeeping, 1, 1, HOURS);
+            if (spool != null) {
+                scheduler.scheduleWithFixedDelay(this::replaySpool, 0, SPOOL_REPLAY_INTERVAL_MILLIS, MILLISECONDS);
+            }
+            flushPendingWrites();
+        } catch (final Exception e) {
+            log.warn("Failed to initialise the LSD MongoDb repository, retrying in {} ms - message:{}", retryDelayMillis, e.getMessage());
+            try {
+                scheduler.schedule(this::initialise, retryDelayMillis, MILLISECONDS);
+            } catch (final RejectedExecutionException rejected) {
+                log.debug("Not retrying the LSD MongoDb repository initialisation as the repository is closed");
+            }
+            retryDelayMillis = Math.min(retryDelayMillis * 2, maxRetryDelayMillis);
+        }
     }
 
-    @SneakyThrows
-    private static void loadCustomTrustStore(final SslSettings.Builder builder, final String trustStoreLocation,
-                                             final String trustStorePassword) {
-        try (final InputStream inputStream = new ClassPathResource(trustStoreLocation).getInputStream()) {
-            final KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-            trustStore.load(inputStream, trustStorePassword.toCharArray());
-            builder.context(new SSLContextBuilder()
-                    .loadTrustMaterial(
-                            trustStore, null
-                    ).build()
-            );
+    private void housekeeping() {
+        try {
+            collections.housekeeping();
+        } catch (final Exception e) {
+            log.warn("Failed to drop the expired LSD MongoDb buckets - message:{}", e.getMessage());
         }
     }
 
-    private MongoCollection<InterceptedInteraction> prepareInterceptedInteractionCollection(final MongoClient mongoClient,
-                                                                                            final Long collectionSizeLimit) {
-        final MongoCollection<InterceptedInteraction> interceptedInteractions;
+    private void flushPendingWrites() {
+        final List<InterceptedInteraction> batch = new ArrayList<>();
+        while (pendingWrites.drainTo(batch, DEFAULT_PENDING_WRITE_CAPACITY) > 0) {
+            insertAll(batch);
+            batch.clear();
+        }
+    }
 
-        if (!collectionExists(mongoClient)) {
-            CreateCollectionOptions options = new CreateCollectionOptions();
-            options.capped(true).sizeInBytes(1024 * 1000 * collectionSizeLimit);
-            mongoClient.getDatabase(DATABASE_NAME).createCollection(COLLECTION_NAME, options);
+    private void addPendingWrite(final InterceptedInteraction interceptedInteraction) {
+        if (database == null) {
+            log.warn("The LSD MongoDb repository is disabled!");
+        } else if (closed) {
+            log.debug("Skipping persisting the interceptedInteraction as the LSD MongoDb repository is closed - traceId:{}", interceptedInteraction.getTraceId());
+        } else if (pendingWritePolicy == PendingWritePolicy.BUFFER) {
+            while (!pendingWrites.offer(interceptedInteraction)) {
+                final InterceptedInteraction evicted = pendingWrites.poll();
+                if (evicted != null) {
+                    dropped(evicted);
+                }
+            }
+            if (isActive()) {
+                flushPendingWrites();
+            }
+        } else {
+            dropped(interceptedInteraction);
         }
+    }
 
-        interceptedInteractions = mongoClient.getDatabase(DATABASE_NAME).getCollection(COLLECTION_NAME, InterceptedInteraction.class).withCodecRegistry(pojoCodecRegistry);
-        interceptedInteractions.createIndex(ascending("traceId"));
-        interceptedInteractions.createIndex(ascending("createdAt"));
-        return interceptedInteractions;
+    /**
+     * Counts an interaction saved before the repository became active that will not be persisted, warning about
+     * such drops at most every ten seconds.
+     */
+    private void dropped(final InterceptedInteraction interceptedInteraction) {
+        final long count = droppedCount.incrementAndGet();
+        metrics.skipped(1);
+        final long now = nanoTime();
+        final long nextWarning = nextDropWarningNanos.get();
+        if (now - nextWarning >= 0 && nextDropWarningNanos.compareAndSet(nextWarning, now + DROP_WARNING_INTERVAL_NANOS)) {
+            log.warn("Dropping interceptedInteractions saved before the LSD MongoDb repository became active - pendingWritePolicy:{}, totalDropped:{}", pendingWritePolicy, count);
+        } else {
+            log.trace("Dropped interceptedInteraction saved before the LSD MongoDb repository became active - traceId:{}, totalDropped:{}", interceptedInteraction.getTraceId(), count);
+        }
     }
 
-    private boolean collectionExists(MongoClient mongoClient) {
-        return mongoClient.getDatabase(DATABASE_NAME).listCollectionNames()
-                .into(new ArrayList<>()).contains(COLLECTION_NAME);
+    static CreateCollectionOptions cappedCollectionOptions(final long collectionSizeLimit) {
+        return new CreateCollectionOptions().capped(true).sizeInBytes(1024 * 1000 * collectionSizeLimit);
     }
 
     @Override
     public void save(final InterceptedInteraction interceptedInteraction) {
-        if (repositoryActive()) {
+        final InterceptedInteraction toPersist = writePolicy.apply(interceptedInteraction);
+        if (toPersist == null) {
+            metrics.skipped(1);
+        } else {
+            insert(toPersist);
+        }
+    }
+
+    public void saveAll(final List<InterceptedInteraction> interceptedInteractionBatch) {
+        final List<InterceptedInteraction> toPersist = new ArrayList<>(interceptedInteractionBatch.size());
+        for (final InterceptedInteraction interceptedInteraction : interceptedInteractionBatch) {
+            final InterceptedInteraction applied = writePolicy.apply(interceptedInteraction);
+            if (applied != null) {
+                toPersist.add(applied);
+            }
+        }
+        if (toPersist.size() < interceptedInteractionBatch.size()) {
+            metrics.skipped(interceptedInteractionBatch.size() - toPersist.size());
+        }
+        insertAll(toPersist);
+    }
+
+    private void insert(final InterceptedInteraction interceptedInteraction) {
+        if (!isActive()) {
+            addPendingWrite(interceptedInteraction);
+        } else if (!circuitClosed("save")) {
+            spoolSkipped(List.of(interceptedInteraction));
+        } else {
+            long startTime = nanoTime();
+            final RawBsonDocument document = encode(interceptedInteraction);
+            try {
+                collections.collectionForWriting(interceptedInteraction.getCreatedAt()).insertOne(document);
+                succeeded();
+                metrics.saved(nanoTime() - startTime, 1, size(document));
+            } catch (final MongoException e) {
+                failed("save", e);
+                if (!(isConnectionFailure(e) && spool(List.of(document)))) {
+                    log.error("Skipping persisting the interceptedInteraction due to exception - interceptedInteraction:{}, message:{}, stackTrace:{}", interceptedInteraction, e.getMessage(), e.getStackTrace());
+                }
+            } finally {
+                invalidateCachedTrace(interceptedInteraction);
+            }
+        }
+    }
+
+    private void insertAll(final List<InterceptedInteraction> interceptedInteractionBatch) {
+        if (!isActive()) {
+            interceptedInteractionBatch.forEach(this::addPendingWrite);
+        } else if (interceptedInteractionBatch.isEmpty()) {
+            return;
+        } else if (!circuitClosed("saveAll")) {
+            spoolSkipped(interceptedInteractionBatch);
+        } else {
+            long startTime = nanoTime();
+            final List<RawBsonDocument> documents = new ArrayList<>(interceptedInteractionBatch.size());
+            long bytes = 0;
+            for (final InterceptedInteraction interceptedInteraction : interceptedInteractionBatch) {
+                final RawBsonDocument document = encode(interceptedInteraction);
+                documents.add(document);
+                bytes += size(document);
+            }
             try {
-                long startTime = currentTimeMillis();
-                interceptedInteractions.insertOne(interceptedInteraction);
-                log.trace("save took {} ms", currentTimeMillis() - startTime);
+                insertEncoded(documents, false);
+                succeeded();
+                metrics.saved(nanoTime() - startTime, documents.size(), bytes);
             } catch (final MongoException e) {
-                log.error("Skipping persisting the interceptedInteraction due to exception - interceptedInteraction:{}, message:{}, stackTrace:{}", interceptedInteraction, e.getMessage(), e.getStackTrace());
+                failed("saveAll", e);
+                if (!(isConnectionFailure(e) && spool(documents))) {
+                    log.error("Skipping persisting {} interceptedInteractions due to exception - message:{}, stackTrace:{}", interceptedInteractionBatch.size(), e.getMessage(), e.getStackTrace());
+                }
+            } finally {
+                interceptedInteractionBatch.forEach(this::invalidateCachedTrace);
+            }
+        }
+    }
+
+    /**
+     * Inserts the documents unordered, in one batch per collection they belong in.
+     *
+     * @param tolerateDuplicates whether documents that were already persisted are skipped rather than failing the insert
+     * @return the number of documents skipped as already persisted
+     */
+    private int insertEncoded(final List<RawBsonDocument> documents, final boolean tolerateDuplicates) {
+        final Map<MongoNamespace, MongoCollection<RawBsonDocument>> targets = new LinkedHashMap<>();
+        final Map<MongoNamespace, List<RawBsonDocument>> batches = new LinkedHashMap<>();
+        for (final RawBsonDocument document : documents) {
+            final MongoCollection<RawBsonDocument> target = collections.collectionForWriting(document);
+            targets.putIfAbsent(target.getNamespace(), target);
+            batches.computeIfAbsent(target.getNamespace(), namespace -> new ArrayList<>()).add(document);
+        }
+        int duplicates = 0;
+        for (final Map.Entry<MongoNamespace, List<RawBsonDocument>> batch : batches.entrySet()) {
+            try {
+                targets.get(batch.getKey()).insertMany(batch.getValue(), new InsertManyOptions().ordered(false));
+            } catch (final MongoBulkWriteException e) {
+                if (!tolerateDuplicates || !onlyDuplicates(e)) {
+                    throw e;
+                }
+                duplicates += e.getWriteErrors().size();
+            }
+        }
+        return duplicates;
+    }
+
+    private static boolean onlyDuplicates(final MongoBulkWriteException e) {
+        return e.getWriteConcernError() == null && e.getWriteErrors().stream()
+                .allMatch(error -> ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY);
+    }
+
+    /**
+     * Keeps the writes skipped while the circuit is open in the spool, if there is one.
+     */
+    private void spoolSkipped(final List<InterceptedInteraction> interceptedInteractions) {
+        if (spool != null) {
+            spool(interceptedInteractions.stream().map(this::encode).collect(toList()));
+        }
+    }
+
+    /**
+     * Queues the documents to be appended to the spool on the scheduler.
+     *
+     * @return false if there is no spool, or its queue is too full to take all the documents
+     */
+    private boolean spool(final List<RawBsonDocument> documents) {
+        if (spool == null || closed) {
+            return false;
+        }
+        int queued = 0;
+        while (queued < documents.size() && spoolQueue.offer(documents.get(queued))) {
+            queued++;
+        }
+        if (queued > 0 && spoolQueueDrainScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::drainSpoolQueue);
+            } catch (final RejectedExecutionException e) {
+                // Closing, which drains the queue itself
+                spoolQueueDrainScheduled.set(false);
+            }
+        }
+        if (queued < documents.size()) {
+            metrics.skipped(documents.size() - queued);
+            log.debug("Skipping spooling {} interceptedInteractions as the LSD spool queue is full", documents.size() - queued);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Appends the queued documents to the spool. Runs on the scheduler, and on closing once the scheduler has stopped.
+     */
+    private void drainSpoolQueue() {
+        spoolQueueDrainScheduled.set(false);
+        final List<RawBsonDocument> documents = new ArrayList<>();
+        while (spoolQueue.drainTo(documents, SPOOL_REPLAY_BATCH_SIZE) > 0) {
+            if (spool.append(documents)) {
+                metrics.spooled(documents.size());
+                log.debug("Spooled {} interceptedInteractions to disk until the LSD MongoDb repository is available", documents.size());
+            } else {
+                metrics.skipped(documents.size());
+            }
+            documents.clear();
+        }
+    }
+
+    /**
+     * Persists the spooled interactions in batches, oldest first, for as long as the database takes them.
+     * Runs on the repository's scheduler, so never concurrently with itself.
+     */
+    private void replaySpool() {
+        while (active && !spool.isEmpty() && circuitClosed("replay")) {
+            final DiskSpool.Batch batch = spool.read(SPOOL_REPLAY_BATCH_SIZE);
+            final List<RawBsonDocument> documents = batch.getDocuments();
+            if (!documents.isEmpty()) {
+                try {
+                    // Documents carry the id they were first sent with, so those that reached the database before
+                    // a crash or a timeout are recognised as duplicates rather than persisted twice
+                    final int duplicates = insertEncoded(documents, true);
+                    succeeded();
+                    metrics.replayed(documents.size() - duplicates);
+                    if (duplicates > 0) {
+                        log.debug("Skipped replaying {} spooled interceptedInteractions that were already persisted", duplicates);
+                    }
+                } catch (final MongoException e) {
+                    failed("replay", e);
+                    if (isConnectionFailure(e)) {
+                        log.warn("Failed to replay the LSD spool, retrying in {} ms - message:{}", SPOOL_REPLAY_INTERVAL_MILLIS, e.getMessage());
+                        return;
+                    }
+                    // The database rejects these documents, so replaying them again would fail the same way
+                    log.error("Skipping replaying {} spooled interceptedInteractions due to exception - message:{}", documents.size(), e.getMessage());
+                } finally {
+                    documents.forEach(this::invalidateCachedTrace);
+                }
+            }
+            spool.commit(batch);
+            if (documents.isEmpty()) {
+                return;
             }
         }
     }
 
     @Override
     public List<InterceptedInteraction> findByTraceIds(final String... traceId) {
+        if (traceCache == null) {
+            return findByTraceIds(null, null, traceId);
+        }
+        final Set<String> traceIds = new LinkedHashSet<>(Arrays.asList(traceId));
+        final Map<String, List<InterceptedInteraction>> cached = traceCache.getAllPresent(traceIds);
+        traceIds.removeAll(cached.keySet());
+        metrics.cacheHits(cached.size());
+        metrics.cacheMisses(traceIds.size());
         final List<InterceptedInteraction> result = new ArrayList<>();
-        if (repositoryActive()) {
-            long startTime = currentTimeMillis();
-            try (final MongoCursor<InterceptedInteraction> cursor = interceptedInteractions
-                    .find(in("traceId", traceId), InterceptedInteraction.class)
-                    .sort(ascending("createdAt"))
-                    .iterator()) {
-                while (cursor.hasNext()) {
-                    result.add(cursor.next());
+        cached.values().forEach(result::addAll);
+        if (!traceIds.isEmpty()) {
+            final Object reservation = traceCache.reserve(traceIds);
+            final long failuresBefore = failures.get();
+            Map<String, List<InterceptedInteraction>> complete = Map.of();
+            final List<InterceptedInteraction> loaded;
+            try {
+                loaded = findByTraceIds(null, null, traceIds.toArray(String[]::new));
+                // A failure may have cut the results short, so only complete traces are cached
+                if (failures.get() == failuresBefore) {
+                    complete = loaded.stream().collect(groupingBy(InterceptedInteraction::getTraceId));
                 }
-                log.trace("findByTraceIds took {} ms", currentTimeMillis() - startTime);
-            } catch (final MongoException e) {
-                log.error("Failed to retrieve interceptedInteractions - message:{}, stackTrace:{}", e.getMessage(), e.getStackTrace());
+            } finally {
+                // Releases the reservations even if loading threw, so that the traces can be cached again
+                traceCache.complete(reservation, complete);
             }
+            if (cached.isEmpty()) {
+                return loaded;
+            }
+            result.addAll(loaded);
         }
+        result.sort(CREATION_ORDER);
         return result;
     }
 
+    /**
+     * Retrieves the interactions of the given traces created from {@code from} inclusive to {@code to} exclusive,
+     * either of which may be null for an open bound. With daily buckets, only the buckets in the window are queried.
+     */
+    public List<InterceptedInteraction> findByTraceIds(final Instant from, final Instant to, final String... traceId) {
+        long startTime = nanoTime();
+        try (final Stream<InterceptedInteraction> interactions = streamByTraceIds(from, to, traceId)) {
+            final List<InterceptedInteraction> result = interactions.collect(toCollection(ArrayList::new));
+            metrics.found(nanoTime() - startTime, result.size());
+            return result;
+        }
+    }
+
+    /**
+     * Streams the interactions of the given traces in creation order, fetching them from the database
+     * {@code cursorBatchSize} documents at a time. The returned stream holds a database cursor and must be closed.
+     */
+    public Stream<InterceptedInteraction> streamByTraceIds(final String... traceId) {
+        return streamByTraceIds(null, null, traceId);
+    }
+
+    public Stream<InterceptedInteraction> streamByTraceIds(final Instant from, final Instant to, final String... traceId) {
+        if (!repositoryActive() || !circuitClosed("find")) {
+            return Stream.empty();
+        }
+        final Bson filter = createdBetween(in("traceId", traceId), from, to);
+        return streamAcross(from, to, collection -> collection
+                .find(filter, InterceptedInteraction.class)
+                .sort(ascending("createdAt")));
+    }
+
+    /**
+     * Retrieves the interactions of the given traces without their bodies and headers.
+     * The full interaction can be fetched on demand with {@link #findById(String)}.
+     */
+    public List<InterceptedInteractionSummary> findSummariesByTraceIds(final String... traceId) {
+        if (!repositoryActive() || !circuitClosed("find")) {
+            return new ArrayList<>();
+        }
+        long startTime = nanoTime();
+        try (final Stream<Document> summaries = streamAcross(null, null, collection -> collection
+                .find(in("traceId", traceId), Document.class)
+                .projection(SUMMARY_PROJECTION)
+                .sort(ascending("createdAt")))) {
+            final List<InterceptedInteractionSummary> result = summaries.map(InterceptedInteractionSummary::fromDocument).collect(toCollection(ArrayList::new));
+            metrics.found(nanoTime() - startTime, result.size());
+            return result;
+        }
+    }
+
+    public Optional<InterceptedInteraction> findById(final String id) {
+        if (!ObjectId.isValid(id) || !repositoryActive() || !circuitClosed("findById")) {
+            return Optional.empty();
+        }
+        try {
+            // Ids embed the time they were saved at, which is usually within a day of the createdAt the bucket
+            // goes by. Interactions saved long after they were created are found in the other buckets.
+            final ObjectId objectId = new ObjectId(id);
+            final Instant generatedAt = objectId.getDate().toInstant();
+            final List<MongoCollection<InterceptedInteraction>> likely = collections.collectionsBetween(generatedAt.minus(1, DAYS), generatedAt.plus(1, DAYS));
+            Optional<InterceptedInteraction> interceptedInteraction = findById(likely, objectId);
+            if (interceptedInteraction.isEmpty()) {
+                interceptedInteraction = findById(collections.bucketsOtherThan(likely), objectId);
+            }
+            succeeded();
+            return interceptedInteraction;
+        } catch (final MongoException e) {
+            failed("findById", e);
+            log.error("Failed to retrieve interceptedInteraction - id:{}, message:{}, stackTrace:{}", id, e.getMessage(), e.getStackTrace());
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<InterceptedInteraction> findById(final List<MongoCollection<InterceptedInteraction>> candidates, final ObjectId id) {
+        for (final MongoCollection<InterceptedInteraction> collection : candidates) {
+            final InterceptedInteraction interceptedInteraction = collection.find(eq("_id", id)).first();
+            if (interceptedInteraction != null) {
+                return Optional.of(interceptedInteraction);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieves a page of the interactions matching the query, without their bodies and headers, ordered by
+     * {@code createdAt} and then by id. Pages are keyed on the last interaction returned rather than on an offset,
+     * so later pages cost as little as the first.
+     *
+     * @throws IllegalArgumentException if the page size is not positive or the page token was not issued by this repository
+     */
+    public InterceptedInteractionPage findInteractions(final InteractionQuery query) {
+        if (query.getPageSize() < 1) {
+            throw new IllegalArgumentException("The page size must be positive but was: " + query.getPageSize());
+        }
+        if (!repositoryActive() || !circuitClosed("findInteractions")) {
+            return new InterceptedInteractionPage(new ArrayList<>(), null);
+        }
+        long startTime = nanoTime();
+        final int pageSize = query.getPageSize();
+        final Document pageStart = query.getPageToken() != null ? parsePageToken(query.getPageToken()) : null;
+        final Instant from = pageStart != null ? latest(query.getFrom(), pageStart.getDate("createdAt").toInstant()) : query.getFrom();
+        final Bson filter = interactionFilter(query, pageStart);
+        try (final Stream<Document> summaries = streamAcross(from, query.getTo(), collection -> {
+            final FindIterable<Document> page = collection.find(filter, Document.class)
+                    .projection(SUMMARY_PROJECTION)
+                    .sort(ascending("createdAt", "_id"))
+                    .limit(pageSize + 1);
+            // Hinting an index that is still being built would fail the query, so unprepared buckets go unhinted
+            return queryIndexes && collections.isPrepared(collection) ? page.hint(InterceptedInteractionIndexes.queryIndexHint(query)) : page;
+        })) {
+            final List<InterceptedInteractionSummary> result = summaries.limit(pageSize + 1L)
+                    .map(InterceptedInteractionSummary::fromDocument)
+                    .collect(toCollection(ArrayList::new));
+            String nextPageToken = null;
+            if (result.size() > pageSize) {
+                result.remove(pageSize);
+                nextPageToken = pageToken(result.get(pageSize - 1));
+            }
+            metrics.found(nanoTime() - startTime, result.size());
+            return new InterceptedInteractionPage(result, nextPageToken);
+        }
+    }
+
+    /**
+     * Computes the interaction count, total elapsed time and error count of each of the given traces in the database,
+     * in the order the trace ids are given. Traces without interactions are left out.
+     */
+    public List<TraceStatistics> findTraceStatistics(final String... traceId) {
+        final Map<String, TraceStatistics> statistics = new HashMap<>();
+        aggregateAcross("findTraceStatistics", null, null, InterceptedInteractionAggregations.traceStatistics(traceId))
+                .forEach(group -> statistics.put(group.getString("_id"), TraceStatistics.fromDocument(group)));
+        return Arrays.stream(traceId)
+                .distinct()
+                .map(statistics::get)
+                .filter(Objects::nonNull)
+                .collect(toCollection(ArrayList::new));
+    }
+
+    /**
+     * Computes the call count and average response time between every pair of service and target with interactions
+     * created from {@code from} inclusive to {@code to} exclusive, either of which may be null for an open bound.
+     */
+    public List<ServiceEdge> findServiceEdges(final Instant from, final Instant to) {
+        return aggregateAcross("findServiceEdges", from, to, InterceptedInteractionAggregations.serviceEdges(createdBetween(null, from, to))).stream()
+                .map(ServiceEdge::fromDocument)
+                .sorted(SERVICE_EDGE_ORDER)
+                .collect(toCollection(ArrayList::new));
+    }
+
+    /**
+     * The ids of the traces with interactions created from {@code from} inclusive to {@code to} exclusive, in the
+     * order the traces started. Either bound may be null for an open bound.
+     */
+    public List<String> findTraceIds(final Instant from, final Instant to) {
+        return aggregateAcross("findTraceIds", from, to, InterceptedInteractionAggregations.traceIds(createdBetween(null, from, to))).stream()
+                .map(group -> group.getString("_id"))
+                .filter(Objects::nonNull)
+                .collect(toCollection(ArrayList::new));
+    }
+
+    /**
+     * Runs the pipeline in every collection that may hold interactions created within the window, concurrently across
+     * daily buckets, combining the groups of a trace or edge that spans several buckets. Only the groups are
+     * transferred.
+     */
+    private Collection<Document> aggregateAcross(final String operation, final Instant from, final Instant to, final List<Bson> pipeline) {
+        if (!repositoryActive() || !circuitClosed(operation)) {
+            return List.of();
+        }
+        long startTime = nanoTime();
+        try {
+            final List<Callable<List<Document>>> aggregations = collections.collectionsBetween(from, to).stream()
+                    .map(collection -> (Callable<List<Document>>) () -> collection.aggregate(pipeline, Document.class).allowDiskUse(true).into(new ArrayList<>()))
+                    .collect(toList());
+            final List<Document> groups = new ArrayList<>();
+            for (final List<Document> bucketGroups : readAll(aggregations)) {
+                groups.addAll(bucketGroups);
+            }
+            succeeded();
+            final Collection<Document> combined = InterceptedInteractionAggregations.combine(groups);
+            metrics.found(nanoTime() - startTime, combined.size());
+            return combined;
+        } catch (final MongoException e) {
+            failed(operation, e);
+            log.error("Failed to aggregate interceptedInteractions - operation:{}, message:{}, stackTrace:{}", operation, e.getMessage(), e.getStackTrace());
+            return List.of();
+        } catch (final InterruptedException | RejectedExecutionException e) {
+            interruptedOrClosed(e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Runs the reads concurrently on the bucket readers, or one after the other on the calling thread when there is
+     * a single one, and returns their results in order.
+     *
+     * @throws MongoException as thrown by the first read that failed
+     */
+    private <T> List<T> readAll(final List<Callable<T>> reads) throws InterruptedException {
+        final List<T> results = new ArrayList<>(reads.size());
+        if (bucketReaders == null || reads.size() == 1) {
+            for (final Callable<T> read : reads) {
+                results.add(outcome(read));
+            }
+            return results;
+        }
+        for (final Future<T> read : bucketReaders.invokeAll(reads)) {
+            try {
+                results.add(read.get());
+            } catch (final ExecutionException e) {
+                throw rethrown(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static <T> T outcome(final Callable<T> read) {
+        try {
+            return read.call();
+        } catch (final Exception e) {
+            throw rethrown(e);
+        }
+    }
+
+    private static RuntimeException rethrown(final Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    private static void interruptedOrClosed(final Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        log.debug("Abandoned reading the LSD MongoDb buckets - message:{}", e.getMessage());
+    }
+
+    /**
+     * Ranges over {@code createdAt} so that the indexes can bound the scan. Interactions created in the same
+     * millisecond as the last one of the previous page are told apart by their id.
+     */
+    private static Bson interactionFilter(final InteractionQuery query, final Document pageStart) {
+        final List<Bson> filters = new ArrayList<>();
+        if (query.getServiceName() != null) {
+            filters.add(eq("serviceName", query.getServiceName()));
+        }
+        if (query.getTarget() != null) {
+            filters.add(eq("target", query.getTarget()));
+        }
+        if (query.getPath() != null) {
+            filters.add(eq("path", query.getPath()));
+        }
+        if (query.getHttpStatus() != null) {
+            filters.add(eq("httpStatus", query.getHttpStatus()));
+        }
+        if (query.getFrom() != null) {
+            filters.add(gte("createdAt", Date.from(query.getFrom())));
+        }
+        if (query.getTo() != null) {
+            filters.add(lt("createdAt", Date.from(query.getTo())));
+        }
+        if (pageStart != null) {
+            final Date createdAt = pageStart.getDate("createdAt");
+            filters.add(gte("createdAt", createdAt));
+            filters.add(or(gt("createdAt", createdAt), gt("_id", pageStart.getObjectId("_id"))));
+        }
+        return filters.isEmpty() ? new Document() : and(filters);
+    }
+
+    private static String pageToken(final InterceptedInteractionSummary lastOfPage) {
+        return lastOfPage.getCreatedAt().toInstant().toEpochMilli() + PAGE_TOKEN_SEPARATOR + lastOfPage.getId();
+    }
+
+    private static Document parsePageToken(final String pageToken) {
+        final int separator = pageToken.indexOf(PAGE_TOKEN_SEPARATOR);
+        try {
+            if (separator > 0) {
+                return new Document("createdAt", new Date(Long.parseLong(pageToken.substring(0, separator))))
+                        .append("_id", new ObjectId(pageToken.substring(separator + 1)));
+            }
+        } catch (final IllegalArgumentException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid page token: " + pageToken);
+    }
+
+    private static Instant latest(final Instant first, final Instant second) {
+        return first == null || second.isAfter(first) ? second : first;
+    }
+
+    /**
+     * Runs the query against every collection that may hold interactions created within the window, streaming the
+     * results oldest collection first. The cursors of the daily buckets are opened concurrently, so that the first
+     * batch of every bucket is fetched in parallel; a bucket that cannot be read is left out.
+     */
+    private <T> Stream<T> streamAcross(final Instant from, final Instant to,
+                                       final Function<MongoCollection<InterceptedInteraction>, FindIterable<T>> query) {
+        final List<MongoCollection<InterceptedInteraction>> targets = collections.collectionsBetween(from, to);
+        if (bucketReaders == null || targets.size() == 1) {
+            return streamOf(query.apply(targets.get(0)));
+        }
+        final List<Callable<MongoCursor<T>>> openings = targets.stream()
+                .map(collection -> (Callable<MongoCursor<T>>) () -> query.apply(collection).batchSize(cursorBatchSize).iterator())
+                .collect(toList());
+        final List<Stream<T>> streams = new ArrayList<>(openings.size());
+        Throwable unexpected = null;
+        try {
+            for (final Future<MongoCursor<T>> opening : bucketReaders.invokeAll(openings)) {
+                try {
+                    streams.add(streamOf(opening.get()));
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof MongoException) {
+                        failedToFind((MongoException) e.getCause());
+                    } else {
+                        unexpected = e.getCause();
+                    }
+                }
+            }
+        } catch (final InterruptedException | RejectedExecutionException e) {
+            streams.forEach(Stream::close);
+            interruptedOrClosed(e);
+            return Stream.empty();
+        }
+        if (unexpected != null) {
+            streams.forEach(Stream::close);
+            throw rethrown(unexpected);
+        }
+        return streams.stream().flatMap(Function.identity()).onClose(() -> streams.forEach(Stream::close));
+    }
+
+    private static Bson createdBetween(final Bson filter, final Instant from, final Instant to) {
+        final List<Bson> filters = new ArrayList<>();
+        if (filter != null) {
+            filters.add(filter);
+        }
+        if (from != null) {
+            filters.add(gte("createdAt", Date.from(from)));
+        }
+        if (to != null) {
+            filters.add(lt("createdAt", Date.from(to)));
+        }
+        if (filters.isEmpty()) {
+            return new Document();
+        }
+        return filters.size() == 1 ? filters.get(0) : and(filters);
+    }
+
+    private <T> Stream<T> streamOf(final FindIterable<T> findIterable) {
+        try {
+            return streamOf(findIterable.batchSize(cursorBatchSize).iterator());
+        } catch (final MongoException e) {
+            failedToFind(e);
+            return Stream.empty();
+        }
+    }
+
+    private <T> Stream<T> streamOf(final MongoCursor<T> cursor) {
+        succeeded();
+        return stream(spliteratorUnknownSize(new MongoExceptionSafeIterator<>(cursor, e -> failed("find", e)), ORDERED | NONNULL), false)
+                .onClose(cursor::close);
+    }
+
+    private void failedToFind(final MongoException e) {
+        failed("find", e);
+        log.error("Failed to retrieve interceptedInteractions - message:{}, stackTrace:{}", e.getMessage(), e.getStackTrace());
+    }
+
+    /**
+     * Pushes the interactions matching the query to the listener as they are persisted, by this or any other
+     * instance, until the returned subscription is closed. Subscribing before the repository is active is fine;
+     * interactions are delivered once it is. Replaces polling {@link #findByTraceIds(String...)} for traces that are
+     * still being written.
+     *
+     * @throws IllegalArgumentException if the resume token was not issued by a subscription
+     */
+    public InteractionSubscription subscribe(final InteractionSubscriptionQuery query, final InteractionListener listener) {
+        if (subscriptions == null || closed) {
+            log.warn("The LSD MongoDb repository is {}!", closed ? "closed" : "disabled");
+            final InteractionSubscription subscription = new InteractionSubscription(query.getResumeToken(), closed -> {
+            });
+            subscription.close();
+            return subscription;
+        }
+        return subscriptions.subscribe(query, listener);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * The interactions saved before the repository became active that were dropped rather than persisted, as
+     * decided by the {@link PendingWritePolicy}, or left behind on closing.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public RepositoryState getState() {
+        if (database == null) {
+            return RepositoryState.DISABLED;
+        }
+        if (closed) {
+            return RepositoryState.CLOSED;
+        }
+        return active ? RepositoryState.ACTIVE : RepositoryState.INITIALISING;
+    }
+
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Stops the background work and closes the client, if the repository owns it. Interactions saved afterwards are
+     * discarded and reads find nothing, rather than failing on the closed client.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        active = false;
+        scheduler.shutdownNow();
+        if (bucketReaders != null) {
+            bucketReaders.shutdownNow();
+        }
+        final int notPersisted = pendingWrites.size();
+        if (notPersisted > 0) {
+            droppedCount.addAndGet(notPersisted);
+            metrics.skipped(notPersisted);
+            log.warn("Closing the LSD MongoDb repository before it became active - {} interceptedInteractions not persisted", notPersisted);
+        }
+        circuitBreaker.close();
+        if (subscriptions != null) {
+            subscriptions.close();
+        }
+        if (spool != null) {
+            drainSpoolQueue();
+            spool.close();
+        }
+        compression.close();
+        if (ownedClient != null) {
+            ownedClient.close();
+        }
+    }
+
+    private boolean ping() {
+        database.runCommand(new Document("ping", 1));
+        return true;
+    }
+
+    private boolean circuitClosed(final String operation) {
+        if (circuitBreaker.allowRequest()) {
+            return true;
+        }
+        log.trace("Skipping {} while the LSD MongoDb repository is unavailable", operation);
+        return false;
+    }
+
+    private void succeeded() {
+        circuitBreaker.recordSuccess();
+    }
+
+    private void failed(final String operation, final MongoException e) {
+        failures.incrementAndGet();
+        metrics.failed(operation, e);
+        if (isConnectionFailure(e)) {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    private static boolean isConnectionFailure(final MongoException e) {
+        return e instanceof MongoSocketException || e instanceof MongoTimeoutException;
+    }
+
+    private void invalidateCachedTrace(final InterceptedInteraction interceptedInteraction) {
+        if (traceCache != null && interceptedInteraction.getTraceId() != null) {
+            traceCache.invalidate(interceptedInteraction.getTraceId());
+        }
+    }
+
+    private void invalidateCachedTrace(final RawBsonDocument document) {
+        if (traceCache != null) {
+            final BsonValue traceId = document.get("traceId");
+            if (traceId != null && traceId.isString()) {
+                traceCache.invalidate(traceId.asString().getValue());
+            }
+        }
+    }
+
+    /**
+     * Encodes the interaction with an id of its own, so that a write that is retried from the spool after it has
+     * already reached the database is recognised as a duplicate.
+     */
+    private RawBsonDocument encode(final InterceptedInteraction interceptedInteraction) {
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (final BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            interceptedInteractionCodec.encode(writer, interceptedInteraction, new ObjectId());
+        }
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+
+    private static int size(final RawBsonDocument document) {
+        return document.getByteBuffer().remaining();
+    }
+
     private boolean repositoryActive() {
-        if (interceptedInteractions == null) {
+        if (database == null) {
             log.warn("The LSD MongoDb repository is disabled!");
             return false;
         }
+        if (!active) {
+            log.debug("The LSD MongoDb repository is {}", closed ? "closed" : "not active yet");
+            return false;
+        }
         return true;
     }
+
+    /**
+     * The collection and its indexes are prepared on a background thread, retried with exponential backoff
+     * until the database is reachable. Optional collaborators left unset fall back to their defaults.
+     * <p>
+     * Given a {@code mongoDatabase}, or else a {@code mongoClient}, the repository shares it rather than creating a
+     * client of its own, and leaves it open on {@link #close()}. The connection settings are then those of the shared
+     * client.
+     * <p>
+     * The {@code storageLayout} decides how interactions are expired: by the size of a capped collection, or after
+     * {@code retentionDays} through a TTL index or by dropping daily buckets.
+     * <p>
+     * With {@code queryIndexes}, the indexes serving {@link #findInteractions(InteractionQuery)} are maintained too.
+     * Given a {@code traceCache}, {@link #findByTraceIds(String...)} reads through it. Given a {@code spool}, writes that
+     * fail for want of a connection, or are skipped while the circuit is open, are kept on disk and replayed once the
+     * database is available again. New interactions can be followed with {@link #subscribe}.
+     */
+    @Setter
+    @Accessors(fluent = true)
+    public static class InterceptedDocumentMongoRepositoryBuilder {
+        private String dbConnectionString;
+        private String trustStoreLocation;
+        private String trustStorePassword;
+        private Integer connectionTimeout;
+        private Long collectionSizeLimit;
+        private Integer cursorBatchSize;
+        private RepositoryMetrics metrics;
+        private CircuitBreaker circuitBreaker;
+        private Long initialRetryDelayMillis;
+        private Long maxRetryDelayMillis;
+        private Integer pendingWriteCapacity;
+        private PendingWritePolicy pendingWritePolicy;
+        private Boolean coveringIndex;
+        private Compression compression;
+        private WritePolicy writePolicy;
+        private MongoClientSettingsCustomizer clientSettingsCustomizer;
+        private MongoClient mongoClient;
+        private MongoDatabase mongoDatabase;
+        private StorageLayout storageLayout;
+        private Integer retentionDays;
+        private Boolean queryIndexes;
+        private TraceCache traceCache;
+        private DiskSpool spool;
+
+        private InterceptedDocumentMongoRepositoryBuilder() {
+        }
+
+        public InterceptedDocumentMongoRepository build() {
+            return new InterceptedDocumentMongoRepository(this);
+        }
+    }
+
+    /**
+     * Ends the iteration instead of propagating a database failure to the caller.
+     */
+    @RequiredArgsConstructor
+    private static class MongoExceptionSafeIterator<T> implements Iterator<T> {
+        private final MongoCursor<T> cursor;
+        private final Consumer<MongoException> onFailure;
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return cursor.hasNext();
+            } catch (final MongoException e) {
+                onFailure.accept(e);
+                log.error("Failed to retrieve interceptedInteractions - message:{}, stackTrace:{}", e.getMessage(), e.getStackTrace());
+                return false;
+            }
+        }
+
+        @Override
+        public T next() {
+            return cursor.next();
+        }
+    }
 }
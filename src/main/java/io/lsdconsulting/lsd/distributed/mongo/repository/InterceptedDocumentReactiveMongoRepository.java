@@ -0,0 +1,249 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.access.repository.InterceptedDocumentRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.Compression;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.InterceptedInteractionCodec;
+import io.lsdconsulting.lsd.distributed.mongo.repository.policy.WritePolicy;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Indexes.ascending;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository.*;
+import static java.util.Collections.emptyList;
+import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * Repository built on the reactive streams driver, so that neither saving nor reading ties up an event-loop thread.
+ * The blocking {@link InterceptedDocumentRepository} methods are kept for callers that are not reactive.
+ * <p>
+ * It stores interactions in the capped collection only, applying the {@link WritePolicy} first, and reads and writes
+ * them with the given {@link Compression}, as the blocking repository does. It has none of the other optional features
+ * of {@link InterceptedDocumentMongoRepository}: write-behind, metrics, the circuit breaker, the query indexes, cursor
+ * batch sizes, the trace cache, the spool and subscriptions.
+ * <p>
+ * The collection is prepared in the background, retried with exponential backoff until the database is reachable.
+ * Operations issued meanwhile wait for it for up to the connection timeout, after which saves are skipped and reads
+ * find nothing. At most {@code maxPendingSaves} fire-and-forget {@link #save(InterceptedInteraction) saves} are in
+ * flight at a time, and further ones are skipped until some complete. With {@code coveringIndex}, trace lookups are
+ * indexed by the covering index of the blocking repository, so that both can share a collection.
+ */
+@Slf4j
+public class InterceptedDocumentReactiveMongoRepository implements InterceptedDocumentRepository, ReactiveInterceptedDocumentRepository, AutoCloseable {
+
+    public static final int DEFAULT_MAX_PENDING_SAVES = 1000;
+
+    private final MongoClient mongoClient;
+    private final Mono<MongoCollection<InterceptedInteraction>> interceptedInteractions;
+    private final Disposable preparation;
+    private final Duration preparationTimeout;
+    private final int maxPendingSaves;
+    private final boolean coveringIndex;
+    private final WritePolicy writePolicy;
+    private final Compression compression;
+    private final CodecRegistry codecRegistry;
+    private final AtomicInteger pendingSaves = new AtomicInteger();
+
+    private volatile MongoCollection<InterceptedInteraction> prepared;
+    private volatile boolean closed;
+
+    public InterceptedDocumentReactiveMongoRepository(final String dbConnectionString, final Integer connectionTimeout,
+                                                      final Long collectionSizeLimit) {
+        this(dbConnectionString, null, null, connectionTimeout, collectionSizeLimit);
+    }
+
+    public InterceptedDocumentReactiveMongoRepository(final String dbConnectionString, final String trustStoreLocation,
+                                                      final String trustStorePassword, final Integer connectionTimeout,
+                                                      final Long collectionSizeLimit) {
+        this(dbConnectionString, trustStoreLocation, trustStorePassword, connectionTimeout, collectionSizeLimit, null, null, null, null, null, null, null);
+    }
+
+    @Builder
+    private InterceptedDocumentReactiveMongoRepository(final String dbConnectionString, final String trustStoreLocation,
+                                                       final String trustStorePassword, final Integer connectionTimeout,
+                                                       final Long collectionSizeLimit, final MongoClientSettingsCustomizer clientSettingsCustomizer,
+                                                       final Integer maxPendingSaves, final Boolean coveringIndex,
+                                                       final WritePolicy writePolicy, final Compression compression,
+                                                       final Long initialRetryDelayMillis, final Long maxRetryDelayMillis) {
+
+        this.maxPendingSaves = defaultIfNull(maxPendingSaves, DEFAULT_MAX_PENDING_SAVES);
+        this.coveringIndex = defaultIfNull(coveringIndex, false);
+        this.writePolicy = defaultIfNull(writePolicy, WritePolicy.PERSIST_ALL);
+        this.compression = defaultIfNull(compression, Compression.NONE);
+        this.codecRegistry = fromRegistries(
+                fromCodecs(new InterceptedInteractionCodec(this.compression)),
+                pojoCodecRegistry
+        );
+        final int timeout = defaultIfNull(connectionTimeout, DEFAULT_TIMEOUT_MILLIS);
+        this.preparationTimeout = Duration.ofMillis(timeout);
+        MongoClient tempClient = null;
+        try {
+            tempClient = MongoClients.create(MongoClientSettingsFactory.create(dbConnectionString, trustStoreLocation, trustStorePassword,
+                    timeout, defaultIfNull(clientSettingsCustomizer, MongoClientSettingsCustomizer.NONE)));
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+        mongoClient = tempClient;
+        if (mongoClient != null) {
+            interceptedInteractions = prepareInterceptedInteractionCollection(mongoClient.getDatabase(DATABASE_NAME),
+                    defaultIfNull(collectionSizeLimit, DEFAULT_COLLECTION_SIZE_LIMIT_MBS),
+                    Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(defaultIfNull(initialRetryDelayMillis, DEFAULT_INITIAL_RETRY_DELAY_MILLIS)))
+                            .maxBackoff(Duration.ofMillis(defaultIfNull(maxRetryDelayMillis, DEFAULT_MAX_RETRY_DELAY_MILLIS))));
+            preparation = interceptedInteractions.subscribe();
+        } else {
+            interceptedInteractions = Mono.empty();
+            preparation = null;
+        }
+    }
+
+    /**
+     * Prepares the collection once, on first subscription, and replays the prepared collection to every later
+     * subscriber. Failures are retried rather than cached, until the repository is closed.
+     */
+    private Mono<MongoCollection<InterceptedInteraction>> prepareInterceptedInteractionCollection(final MongoDatabase database,
+                                                                                                 final long collectionSizeLimit,
+                                                                                                 final RetryBackoffSpec retry) {
+        final MongoCollection<InterceptedInteraction> collection = database.getCollection(COLLECTION_NAME, InterceptedInteraction.class).withCodecRegistry(codecRegistry);
+        return Flux.from(database.listCollectionNames()).any(COLLECTION_NAME::equals)
+                .flatMap(collectionExists -> collectionExists
+                        ? Mono.<Void>empty()
+                        : Mono.from(database.createCollection(COLLECTION_NAME, cappedCollectionOptions(collectionSizeLimit))))
+                .then(ensureIndexes(collection))
+                .thenReturn(collection)
+                .doOnError(e -> {
+                    if (!closed) {
+                        log.warn("Failed to prepare the LSD MongoDb collection, retrying - message:{}", e.getMessage());
+                    }
+                })
+                .retryWhen(retry.filter(e -> !closed))
+                .doOnNext(preparedCollection -> {
+                    prepared = preparedCollection;
+                    log.info("The LSD MongoDb repository is active");
+                })
+                .onErrorResume(e -> {
+                    log.debug("Not preparing the LSD MongoDb collection as the repository is closed - message:{}", e.getMessage());
+                    return Mono.empty();
+                })
+                .cache();
+    }
+
+    /**
+     * The prepared collection, or nothing if it is not prepared within the connection timeout.
+     */
+    private Mono<MongoCollection<InterceptedInteraction>> preparedCollection() {
+        if (prepared != null) {
+            return Mono.just(prepared);
+        }
+        return interceptedInteractions.timeout(preparationTimeout, Mono.fromRunnable(() ->
+                log.debug("The LSD MongoDb repository is not active yet")));
+    }
+
+    private Mono<Void> ensureIndexes(final MongoCollection<InterceptedInteraction> interceptedInteractions) {
+        return Flux.from(interceptedInteractions.listIndexes()).collectList().flatMap(existingIndexes -> {
+            final List<IndexModel> missingIndexes = InterceptedInteractionIndexes.missingIndexModels(existingIndexes, coveringIndex, false, null);
+            final Mono<Void> created = missingIndexes.isEmpty() ? Mono.empty() : Flux.from(interceptedInteractions.createIndexes(missingIndexes)).then();
+            return created.thenMany(Flux.fromIterable(InterceptedInteractionIndexes.redundantIndexNames(existingIndexes, coveringIndex)))
+                    .concatMap(indexName -> Mono.from(interceptedInteractions.dropIndex(indexName))
+                            .onErrorResume(MongoCommandException.class, e -> {
+                                log.debug("Could not drop the redundant index {} - message:{}", indexName, e.getMessage());
+                                return Mono.empty();
+                            }))
+                    .then();
+        });
+    }
+
+    @Override
+    public Mono<Void> saveReactive(final InterceptedInteraction interceptedInteraction) {
+        if (!repositoryActive()) {
+            return Mono.empty();
+        }
+        final InterceptedInteraction toPersist = writePolicy.apply(interceptedInteraction);
+        if (toPersist == null) {
+            return Mono.empty();
+        }
+        return preparedCollection()
+                .flatMap(collection -> Mono.from(collection.insertOne(toPersist)))
+                .then()
+                .onErrorResume(MongoException.class, e -> {
+                    log.error("Skipping persisting the interceptedInteraction due to exception - interceptedInteraction:{}, message:{}, stackTrace:{}", interceptedInteraction, e.getMessage(), e.getStackTrace());
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public Flux<InterceptedInteraction> findByTraceIdsReactive(final String... traceId) {
+        if (!repositoryActive()) {
+            return Flux.empty();
+        }
+        return preparedCollection()
+                .flatMapMany(collection -> collection
+                        .find(in("traceId", traceId), InterceptedInteraction.class)
+                        .sort(ascending("createdAt")))
+                .onErrorResume(MongoException.class, e -> {
+                    log.error("Failed to retrieve interceptedInteractions - message:{}, stackTrace:{}", e.getMessage(), e.getStackTrace());
+                    return Flux.empty();
+                });
+    }
+
+    /**
+     * Fire-and-forget: the insert is subscribed to but not waited for.
+     */
+    @Override
+    public void save(final InterceptedInteraction interceptedInteraction) {
+        if (pendingSaves.incrementAndGet() > maxPendingSaves) {
+            pendingSaves.decrementAndGet();
+            log.warn("Skipping persisting the interceptedInteraction as {} saves are already pending - traceId:{}", maxPendingSaves, interceptedInteraction.getTraceId());
+            return;
+        }
+        saveReactive(interceptedInteraction)
+                .doFinally(signal -> pendingSaves.decrementAndGet())
+                .subscribe();
+    }
+
+    @Override
+    public List<InterceptedInteraction> findByTraceIds(final String... traceId) {
+        final List<InterceptedInteraction> result = findByTraceIdsReactive(traceId).collectList().block();
+        return result != null ? result : emptyList();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (preparation != null) {
+            preparation.dispose();
+        }
+        compression.close();
+        if (mongoClient != null) {
+            mongoClient.close();
+        }
+    }
+
+    private boolean repositoryActive() {
+        if (mongoClient == null) {
+            log.warn("The LSD MongoDb repository is disabled!");
+            return false;
+        }
+        return true;
+    }
+}
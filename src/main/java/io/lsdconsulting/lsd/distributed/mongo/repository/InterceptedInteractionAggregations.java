@@ -0,0 +1,84 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.client.model.Accumulators.min;
+import static com.mongodb.client.model.Accumulators.sum;
+import static com.mongodb.client.model.Aggregates.group;
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Aggregates.sort;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Sorts.ascending;
+import static java.util.Arrays.asList;
+
+/**
+ * The aggregation pipelines behind the repository's trace statistics.
+ * <p>
+ * Every group holds only sums, so the groups computed separately in each daily bucket are combined by adding them up.
+ */
+final class InterceptedInteractionAggregations {
+
+    private static final Document IS_ERROR = new Document("$cond", asList(
+            new Document("$in", asList(new Document("$substrCP", asList(new Document("$ifNull", asList("$httpStatus", "")), 0, 1)), asList("4", "5"))),
+            1, 0));
+    private static final Document IS_RESPONSE = new Document("$eq", asList("$type", "RESPONSE"));
+    private static final Document HAS_ELAPSED_TIME = new Document("$ne", asList(new Document("$ifNull", asList("$elapsedTime", null)), null));
+
+    private InterceptedInteractionAggregations() {
+    }
+
+    static List<Bson> traceStatistics(final String... traceId) {
+        return List.of(
+                match(in("traceId", traceId)),
+                group("$traceId",
+                        sum("interactionCount", 1),
+                        sum("totalElapsedTime", "$elapsedTime"),
+                        sum("errorCount", IS_ERROR)));
+    }
+
+    static List<Bson> serviceEdges(final Bson window) {
+        return List.of(
+                match(window),
+                group(new Document("serviceName", "$serviceName").append("target", "$target"),
+                        sum("callCount", new Document("$cond", asList(IS_RESPONSE, 0, 1))),
+                        sum("elapsedTimeSum", new Document("$cond", asList(IS_RESPONSE, "$elapsedTime", 0))),
+                        sum("elapsedTimeCount", new Document("$cond", asList(new Document("$and", asList(IS_RESPONSE, HAS_ELAPSED_TIME)), 1, 0)))));
+    }
+
+    /**
+     * The trace ids in the order their traces started.
+     */
+    static List<Bson> traceIds(final Bson window) {
+        return List.of(
+                match(window),
+                group("$traceId", min("startedAt", "$createdAt")),
+                sort(ascending("startedAt", "_id")));
+    }
+
+    /**
+     * Combines the groups with the same id by adding up their sums, keeping the order groups were first seen in.
+     */
+    static Collection<Document> combine(final List<Document> groups) {
+        final Map<Object, Document> combined = new LinkedHashMap<>();
+        for (final Document group : groups) {
+            combined.merge(group.get("_id"), group, InterceptedInteractionAggregations::add);
+        }
+        return combined.values();
+    }
+
+    private static Document add(final Document first, final Document second) {
+        final Document sum = new Document("_id", first.get("_id"));
+        first.forEach((field, value) -> {
+            if (value instanceof Number) {
+                sum.append(field, ((Number) value).longValue() + second.get(field, Number.class).longValue());
+            }
+        });
+        return sum;
+    }
+}
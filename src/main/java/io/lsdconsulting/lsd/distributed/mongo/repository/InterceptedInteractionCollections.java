@@ -0,0 +1,335 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexModel;
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.regex;
+import static com.mongodb.client.model.Indexes.ascending;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository.COLLECTION_NAME;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository.cappedCollectionOptions;
+import static java.util.concurrent.TimeUnit.DAYS;
+
+/**
+ * Prepares and resolves the collections holding intercepted interactions for a {@link StorageLayout}.
+ * <p>
+ * With {@link StorageLayout#DAILY_BUCKETS} every UTC day of {@code createdAt} has its own collection, named after
+ * the day. Buckets are prepared on startup and the next day's ahead of time, and dropped once older than the
+ * retention. A bucket first written to without having been prepared, e.g. for an interaction created in the past, is
+ * prepared in the background rather than holding up the write. Reads fan out, in chronological order, only to the
+ * buckets overlapping the time window queried.
+ */
+@Slf4j
+class InterceptedInteractionCollections {
+
+    private static final DateTimeFormatter BUCKET_DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String BUCKET_PREFIX = COLLECTION_NAME + "_";
+
+    private final MongoDatabase database;
+    private final CodecRegistry codecRegistry;
+    private final StorageLayout layout;
+    private final long collectionSizeLimit;
+    private final int retentionDays;
+    private final boolean coveringIndex;
+    private final boolean queryIndexes;
+    private final Clock clock;
+    private final Executor preparer;
+    private final Set<String> preparedBuckets = ConcurrentHashMap.newKeySet();
+    private final Set<String> preparingBuckets = ConcurrentHashMap.newKeySet();
+    private final MongoCollection<InterceptedInteraction> singleCollection;
+    private final MongoCollection<RawBsonDocument> rawSingleCollection;
+
+    InterceptedInteractionCollections(final MongoDatabase database, final CodecRegistry codecRegistry, final StorageLayout layout,
+                                      final long collectionSizeLimit, final int retentionDays, final boolean coveringIndex,
+                                      final boolean queryIndexes, final Clock clock, final Executor preparer) {
+        this.database = database;
+        this.codecRegistry = codecRegistry;
+        this.layout = layout;
+        this.collectionSizeLimit = collectionSizeLimit;
+        this.retentionDays = retentionDays;
+        this.coveringIndex = coveringIndex;
+        this.queryIndexes = queryIndexes;
+        this.clock = clock;
+        this.preparer = preparer;
+        this.singleCollection = collection(COLLECTION_NAME);
+        this.rawSingleCollection = singleCollection.withDocumentClass(RawBsonDocument.class);
+    }
+
+    void prepare() {
+        if (layout == StorageLayout.DAILY_BUCKETS) {
+            final String today = bucketName(LocalDate.now(clock));
+            prepareBucket(today);
+            for (final String name : database.listCollectionNames().into(new ArrayList<>())) {
+                if (bucketDate(name) != null && !preparedBuckets.contains(name)) {
+                    prepareBucket(name);
+                }
+            }
+            checkTraceQueryPlan(collection(today));
+            housekeeping();
+        } else {
+            prepareSingleCollection(layout == StorageLayout.CAPPED);
+        }
+    }
+
+    /**
+     * Drops the buckets older than the retention and prepares the next day's bucket ahead of time.
+     * A no-op for the single collection layouts.
+     */
+    void housekeeping() {
+        if (layout != StorageLayout.DAILY_BUCKETS) {
+            return;
+        }
+        final LocalDate oldestRetained = LocalDate.now(clock).minusDays(retentionDays);
+        for (final String name : database.listCollectionNames().into(new ArrayList<>())) {
+            final LocalDate bucketDate = bucketDate(name);
+            if (bucketDate != null && bucketDate.isBefore(oldestRetained)) {
+                database.getCollection(name).drop();
+                preparedBuckets.remove(name);
+                log.info("Dropped the expired LSD MongoDb bucket {}", name);
+            }
+        }
+        prepareBucket(bucketName(LocalDate.now(clock).plusDays(1)));
+    }
+
+    /**
+     * The collection an interaction created at the given time is written to. A bucket not prepared yet is prepared
+     * in the background, while Mongo creates it on the first write.
+     */
+    MongoCollection<RawBsonDocument> collectionForWriting(final ZonedDateTime createdAt) {
+        if (layout != StorageLayout.DAILY_BUCKETS) {
+            return rawSingleCollection;
+        }
+        final String name = bucketName(createdAt != null ? createdAt.withZoneSameInstant(ZoneOffset.UTC).toLocalDate() : LocalDate.now(clock));
+        if (!preparedBuckets.contains(name)) {
+            prepareInBackground(name);
+        }
+        return collection(name).withDocumentClass(RawBsonDocument.class);
+    }
+
+    /**
+     * The collection an encoded interaction is written to, going by its {@code createdAt}.
+     */
+    MongoCollection<RawBsonDocument> collectionForWriting(final RawBsonDocument document) {
+        if (layout != StorageLayout.DAILY_BUCKETS) {
+            return rawSingleCollection;
+        }
+        final BsonValue createdAt = document.get("createdAt");
+        return collectionForWriting(createdAt != null && createdAt.isDateTime()
+                ? ZonedDateTime.ofInstant(Instant.ofEpochMilli(createdAt.asDateTime().getValue()), ZoneOffset.UTC)
+                : null);
+    }
+
+    /**
+     * The collections that may hold interactions created between the given times, oldest first.
+     * Null bounds stand for the retention period.
+     */
+    List<MongoCollection<InterceptedInteraction>> collectionsBetween(final Instant from, final Instant to) {
+        if (layout != StorageLayout.DAILY_BUCKETS) {
+            return List.of(singleCollection);
+        }
+        final LocalDate today = LocalDate.now(clock);
+        final LocalDate oldestRetained = today.minusDays(retentionDays);
+        final LocalDate first = max(from != null ? from.atZone(ZoneOffset.UTC).toLocalDate() : oldestRetained, oldestRetained);
+        final LocalDate last = to != null ? to.atZone(ZoneOffset.UTC).toLocalDate() : today.plusDays(1);
+        final List<MongoCollection<InterceptedInteraction>> collections = new ArrayList<>();
+        for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+            collections.add(collection(bucketName(date)));
+        }
+        return collections;
+    }
+
+    /**
+     * The existing buckets other than the given collections, newest first; none with the single collection layouts.
+     */
+    List<MongoCollection<InterceptedInteraction>> bucketsOtherThan(final List<MongoCollection<InterceptedInteraction>> collections) {
+        if (layout != StorageLayout.DAILY_BUCKETS) {
+            return List.of();
+        }
+        final Set<String> excluded = new HashSet<>();
+        collections.forEach(collection -> excluded.add(collection.getNamespace().getCollectionName()));
+        final List<MongoCollection<InterceptedInteraction>> buckets = new ArrayList<>();
+        database.listCollectionNames().into(new ArrayList<>()).stream()
+                .filter(name -> bucketDate(name) != null && !excluded.contains(name))
+                .sorted(Comparator.reverseOrder())
+                .forEach(name -> buckets.add(collection(name)));
+        return buckets;
+    }
+
+    /**
+     * Whether the indexes of the collection have been built by this instance. A daily bucket first written to after
+     * startup is prepared in the background, and may not have them yet.
+     */
+    boolean isPrepared(final MongoCollection<?> collection) {
+        return layout != StorageLayout.DAILY_BUCKETS || preparedBuckets.contains(collection.getNamespace().getCollectionName());
+    }
+
+    /**
+     * A change stream of the collections interactions are written to, leaving out other collections in the database.
+     */
+    ChangeStreamIterable<RawBsonDocument> watch(final List<Bson> pipeline) {
+        if (layout != StorageLayout.DAILY_BUCKETS) {
+            return rawSingleCollection.watch(pipeline);
+        }
+        final List<Bson> bucketPipeline = new ArrayList<>();
+        bucketPipeline.add(match(regex("ns.coll", "^" + BUCKET_PREFIX)));
+        bucketPipeline.addAll(pipeline);
+        return database.withCodecRegistry(codecRegistry).watch(bucketPipeline, RawBsonDocument.class);
+    }
+
+    /**
+     * The capped collection interactions are written to, which can be tailed; null with the other layouts.
+     */
+    MongoCollection<RawBsonDocument> cappedCollection() {
+        return layout == StorageLayout.CAPPED ? rawSingleCollection : null;
+    }
+
+    private MongoCollection<InterceptedInteraction> collection(final String name) {
+        return database.getCollection(name, InterceptedInteraction.class).withCodecRegistry(codecRegistry);
+    }
+
+    private void prepareSingleCollection(final boolean capped) {
+        final Document existing = database.listCollections().filter(eq("name", COLLECTION_NAME)).first();
+        boolean expiring = !capped;
+        if (existing == null) {
+            if (capped) {
+                database.createCollection(COLLECTION_NAME, cappedCollectionOptions(collectionSizeLimit));
+            } else {
+                database.createCollection(COLLECTION_NAME);
+            }
+        } else if (expiring && isCapped(existing)) {
+            log.warn("The LSD MongoDb collection {} is capped, so its interactions cannot expire through a TTL index - "
+                    + "drop or rename it to switch to the TTL storage layout", COLLECTION_NAME);
+            expiring = false;
+        }
+        ensureIndexes(singleCollection, expiring ? DAYS.toSeconds(retentionDays) : null);
+        checkTraceQueryPlan(singleCollection);
+    }
+
+    private void prepareBucket(final String name) {
+        ensureIndexes(collection(name), null);
+        preparedBuckets.add(name);
+    }
+
+    private void prepareInBackground(final String name) {
+        if (!preparingBuckets.add(name)) {
+            return;
+        }
+        try {
+            preparer.execute(() -> {
+                try {
+                    prepareBucket(name);
+                } catch (final MongoException e) {
+                    log.warn("Failed to prepare the LSD MongoDb bucket {}, retrying on the next write - message:{}", name, e.getMessage());
+                } finally {
+                    preparingBuckets.remove(name);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            preparingBuckets.remove(name);
+        }
+    }
+
+    /**
+     * Builds the managed indexes before dropping the ones they replace, so trace lookups stay index backed
+     * throughout the migration. Another instance may be migrating the same collection concurrently.
+     */
+    private void ensureIndexes(final MongoCollection<InterceptedInteraction> collection, final Long expireAfterSeconds) {
+        final List<Document> existingIndexes = collection.listIndexes().into(new ArrayList<>());
+        final List<IndexModel> missingIndexes = InterceptedInteractionIndexes.missingIndexModels(existingIndexes, coveringIndex, queryIndexes, expireAfterSeconds);
+        if (!missingIndexes.isEmpty()) {
+            collection.createIndexes(missingIndexes);
+        }
+        if (InterceptedInteractionIndexes.expiryDiffers(existingIndexes, expireAfterSeconds)) {
+            changeExpiry(collection, expireAfterSeconds);
+        }
+        for (final String indexName : InterceptedInteractionIndexes.redundantIndexNames(existingIndexes, coveringIndex)) {
+            try {
+                collection.dropIndex(indexName);
+                log.info("Dropped the redundant index {} from the LSD MongoDb collection", indexName);
+            } catch (final MongoCommandException e) {
+                log.debug("Could not drop the redundant index {} - message:{}", indexName, e.getMessage());
+            }
+        }
+    }
+
+    private void changeExpiry(final MongoCollection<InterceptedInteraction> collection, final long expireAfterSeconds) {
+        try {
+            database.runCommand(new Document("collMod", collection.getNamespace().getCollectionName())
+                    .append("index", new Document("keyPattern", new Document("createdAt", 1))
+                            .append("expireAfterSeconds", expireAfterSeconds)));
+            log.info("Interactions in the LSD MongoDb collection now expire after {} seconds", expireAfterSeconds);
+        } catch (final MongoCommandException e) {
+            log.warn("Could not make the createdAt index of the LSD MongoDb collection expire interactions - message:{}", e.getMessage());
+        }
+    }
+
+    private void checkTraceQueryPlan(final MongoCollection<InterceptedInteraction> collection) {
+        try {
+            final Document explanation = collection
+                    .find(in("traceId", "lsd-query-plan-check-1", "lsd-query-plan-check-2"), Document.class)
+                    .sort(ascending("createdAt"))
+                    .explain(ExplainVerbosity.QUERY_PLANNER);
+            final Set<String> unindexedStages = InterceptedInteractionIndexes.unindexedStages(explanation);
+            if (!unindexedStages.isEmpty()) {
+                log.warn("Trace lookups on the LSD MongoDb collection are not backed by an index - plan stages:{}, indexes:{}",
+                        unindexedStages, collection.listIndexes().map(index -> index.get("name")).into(new ArrayList<>()));
+            }
+        } catch (final MongoException e) {
+            log.debug("Could not check the query plan of trace lookups - message:{}", e.getMessage());
+        }
+    }
+
+    private static boolean isCapped(final Document collectionInfo) {
+        final Object options = collectionInfo.get("options");
+        return options instanceof Document && Boolean.TRUE.equals(((Document) options).getBoolean("capped"));
+    }
+
+    static String bucketName(final LocalDate date) {
+        return BUCKET_PREFIX + BUCKET_DATE_FORMAT.format(date);
+    }
+
+    private static LocalDate bucketDate(final String collectionName) {
+        if (!collectionName.startsWith(BUCKET_PREFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(collectionName.substring(BUCKET_PREFIX.length()), BUCKET_DATE_FORMAT);
+        } catch (final DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static LocalDate max(final LocalDate first, final LocalDate second) {
+        return first.isAfter(second) ? first : second;
+    }
+}
@@ -0,0 +1,164 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.mongodb.client.model.Indexes.ascending;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * The indexes the repository manages on the intercepted interaction collection.
+ * <p>
+ * Trace lookups filter on {@code traceId} and sort on {@code createdAt}, so they are served by the compound
+ * {@code {traceId: 1, createdAt: 1}} index. The optional covering index extends it with every summary field,
+ * letting summary queries be answered from the index alone. Indexes made redundant by either are dropped
+ * once their replacement exists; the standalone {@code createdAt} index is kept for expiry and time based queries.
+ * <p>
+ * The optional query indexes serve {@link InteractionQuery interaction queries}: one per equality criterion that
+ * narrows the search most - the service, then the target - followed by the {@code (createdAt, _id)} keyset the
+ * pages are ordered on, and the bare keyset for queries on time alone.
+ */
+final class InterceptedInteractionIndexes {
+
+    private static final String COVERING_INDEX_NAME = "traceId_1_createdAt_1_summary";
+
+    private static final List<String> LEGACY_TRACE_INDEX_KEYS = List.of("traceId");
+    private static final List<String> TRACE_INDEX_KEYS = List.of("traceId", "createdAt");
+    private static final List<String> CREATED_AT_INDEX_KEYS = List.of("createdAt");
+    private static final List<String> COVERING_INDEX_KEYS = coveringIndexKeys();
+    private static final List<String> KEYSET_INDEX_KEYS = List.of("createdAt", "_id");
+    private static final List<String> SERVICE_QUERY_INDEX_KEYS = List.of("serviceName", "createdAt", "_id");
+    private static final List<String> TARGET_QUERY_INDEX_KEYS = List.of("target", "createdAt", "_id");
+
+    private static final Set<String> UNINDEXED_STAGES = Set.of("COLLSCAN", "SORT");
+
+    private InterceptedInteractionIndexes() {
+    }
+
+    /**
+     * The managed indexes whose keys are not indexed yet. An index with the same keys but a different name is
+     * left alone rather than recreated, as Mongo rejects two indexes on the same keys.
+     *
+     * @param expireAfterSeconds when not null, the {@code createdAt} index is a TTL index expiring documents this long
+     *                           after their creation
+     */
+    static List<IndexModel> missingIndexModels(final Collection<Document> existingIndexes, final boolean coveringIndex,
+                                               final boolean queryIndexes, final Long expireAfterSeconds) {
+        final Set<List<String>> existingKeys = existingIndexes.stream()
+                .map(InterceptedInteractionIndexes::keysOf)
+                .collect(toSet());
+        return managedIndexKeys(coveringIndex, queryIndexes).stream()
+                .filter(keys -> !existingKeys.contains(keys))
+                .map(keys -> indexModel(keys, expireAfterSeconds))
+                .collect(toList());
+    }
+
+    /**
+     * Whether an existing {@code createdAt} index expires documents after a different time than wanted, and so needs
+     * modifying rather than creating.
+     */
+    static boolean expiryDiffers(final Collection<Document> existingIndexes, final Long expireAfterSeconds) {
+        if (expireAfterSeconds == null) {
+            return false;
+        }
+        return existingIndexes.stream()
+                .filter(index -> keysOf(index).equals(CREATED_AT_INDEX_KEYS))
+                .anyMatch(index -> {
+                    final Object existing = index.get("expireAfterSeconds");
+                    return !(existing instanceof Number) || ((Number) existing).longValue() != expireAfterSeconds;
+                });
+    }
+
+    /**
+     * The existing indexes that a managed index makes redundant: the legacy single field {@code traceId} index,
+     * and whichever of the compound or covering trace index is not in use.
+     */
+    static List<String> redundantIndexNames(final Collection<Document> existingIndexes, final boolean coveringIndex) {
+        final Set<List<String>> redundantKeys = Set.of(LEGACY_TRACE_INDEX_KEYS, coveringIndex ? TRACE_INDEX_KEYS : COVERING_INDEX_KEYS);
+        return existingIndexes.stream()
+                .filter(index -> redundantKeys.contains(keysOf(index)))
+                .map(index -> index.getString("name"))
+                .collect(toList());
+    }
+
+    /**
+     * The stages of the winning plan in an {@code explain} result that mean the query is not fully served by
+     * an index - a collection scan, or a sort performed in memory. Empty when the query is index backed.
+     */
+    static Set<String> unindexedStages(final Document explanation) {
+        final Set<String> stages = new LinkedHashSet<>();
+        final Object queryPlanner = explanation.get("queryPlanner");
+        if (queryPlanner instanceof Document) {
+            collectStages(((Document) queryPlanner).get("winningPlan"), stages);
+        }
+        stages.retainAll(UNINDEXED_STAGES);
+        return stages;
+    }
+
+    private static void collectStages(final Object node, final Set<String> stages) {
+        if (node instanceof Document) {
+            final Document document = (Document) node;
+            final Object stage = document.get("stage");
+            if (stage instanceof String) {
+                stages.add((String) stage);
+            }
+            document.values().forEach(value -> collectStages(value, stages));
+        } else if (node instanceof List) {
+            ((List<?>) node).forEach(value -> collectStages(value, stages));
+        }
+    }
+
+    /**
+     * The query index best serving an interaction query, to hint the planner with. Left to itself the planner may
+     * settle on the {@code createdAt} index, which needs an in-memory sort to order interactions created together.
+     */
+    static Bson queryIndexHint(final InteractionQuery query) {
+        if (query.getServiceName() != null) {
+            return ascending(SERVICE_QUERY_INDEX_KEYS);
+        }
+        if (query.getTarget() != null) {
+            return ascending(TARGET_QUERY_INDEX_KEYS);
+        }
+        return ascending(KEYSET_INDEX_KEYS);
+    }
+
+    private static List<List<String>> managedIndexKeys(final boolean coveringIndex, final boolean queryIndexes) {
+        final List<List<String>> keys = new ArrayList<>(List.of(CREATED_AT_INDEX_KEYS, coveringIndex ? COVERING_INDEX_KEYS : TRACE_INDEX_KEYS));
+        if (queryIndexes) {
+            keys.addAll(List.of(KEYSET_INDEX_KEYS, SERVICE_QUERY_INDEX_KEYS, TARGET_QUERY_INDEX_KEYS));
+        }
+        return keys;
+    }
+
+    private static IndexModel indexModel(final List<String> keys, final Long expireAfterSeconds) {
+        // The generated name of the covering index would list every summary field
+        if (keys.equals(COVERING_INDEX_KEYS)) {
+            return new IndexModel(ascending(keys), new IndexOptions().name(COVERING_INDEX_NAME));
+        }
+        if (keys.equals(CREATED_AT_INDEX_KEYS) && expireAfterSeconds != null) {
+            return new IndexModel(ascending(keys), new IndexOptions().expireAfter(expireAfterSeconds, SECONDS));
+        }
+        return new IndexModel(ascending(keys));
+    }
+
+    private static List<String> keysOf(final Document index) {
+        final Object key = index.get("key");
+        return key instanceof Document ? new ArrayList<>(((Document) key).keySet()) : List.of();
+    }
+
+    private static List<String> coveringIndexKeys() {
+        final Set<String> keys = new LinkedHashSet<>(TRACE_INDEX_KEYS);
+        keys.addAll(InterceptedInteractionSummary.FIELDS);
+        return new ArrayList<>(keys);
+    }
+}
@@ -0,0 +1,23 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * A page of the interactions matching an {@link InteractionQuery}.
+ */
+@Value
+public class InterceptedInteractionPage {
+
+    List<InterceptedInteractionSummary> interactions;
+    /**
+     * Passed as the {@link InteractionQuery#getPageToken() page token} of the same query to fetch the next page;
+     * null on the last page.
+     */
+    String nextPageToken;
+
+    public boolean hasNextPage() {
+        return nextPageToken != null;
+    }
+}
@@ -0,0 +1,52 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import io.lsdconsulting.lsd.distributed.access.model.Type;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.TypeCodec;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.ZonedDateTimeCodec;
+import lombok.Builder;
+import lombok.Value;
+import org.bson.Document;
+
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+
+/**
+ * The lightweight part of an intercepted interaction - everything except the body and the headers.
+ */
+@Value
+@Builder
+public class InterceptedInteractionSummary {
+
+    static final List<String> FIELDS = asList("_id", "traceId", "serviceName", "target", "path", "type", "httpStatus", "elapsedTime", "createdAt");
+
+    String id;
+    String traceId;
+    String serviceName;
+    String target;
+    String path;
+    Type type;
+    String httpStatus;
+    Long elapsedTime;
+    ZonedDateTime createdAt;
+
+    static InterceptedInteractionSummary fromDocument(final Document document) {
+        final String type = document.getString("type");
+        final Date createdAt = document.getDate("createdAt");
+        // Written as INT64 by this library, but other writers may have stored it as INT32 or DOUBLE
+        final Number elapsedTime = document.get("elapsedTime", Number.class);
+        return InterceptedInteractionSummary.builder()
+                .id(document.getObjectId("_id").toHexString())
+                .traceId(document.getString("traceId"))
+                .serviceName(document.getString("serviceName"))
+                .target(document.getString("target"))
+                .path(document.getString("path"))
+                .type(type != null ? TypeCodec.forName(type) : null)
+                .httpStatus(document.getString("httpStatus"))
+                .elapsedTime(elapsedTime != null ? elapsedTime.longValue() : null)
+                .createdAt(createdAt != null ? ZonedDateTimeCodec.fromEpochMilli(createdAt.getTime()) : null)
+                .build();
+    }
+}
@@ -0,0 +1,23 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import com.mongodb.MongoClientSettings;
+
+/**
+ * Adjusts the settings of the client the repository creates, after the connection string, timeouts and trust store
+ * have been applied.
+ */
+@FunctionalInterface
+public interface MongoClientSettingsCustomizer {
+
+    MongoClientSettingsCustomizer NONE = builder -> {
+    };
+
+    void customize(MongoClientSettings.Builder builder);
+
+    default MongoClientSettingsCustomizer andThen(final MongoClientSettingsCustomizer next) {
+        return builder -> {
+            customize(builder);
+            next.customize(builder);
+        };
+    }
+}
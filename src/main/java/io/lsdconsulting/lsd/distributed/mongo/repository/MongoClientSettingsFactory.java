@@ -0,0 +1,63 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.connection.SslSettings;
+import lombok.SneakyThrows;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Builds the client settings shared by the blocking and the reactive repositories.
+ */
+final class MongoClientSettingsFactory {
+
+    private MongoClientSettingsFactory() {
+    }
+
+    static MongoClientSettings create(final String dbConnectionString, final String trustStoreLocation,
+                                      final String trustStorePassword, final int connectionTimeout,
+                                      final MongoClientSettingsCustomizer customizer) {
+        final MongoClientSettings.Builder builder = MongoClientSettings.builder()
+                .applyToSocketSettings(b -> {
+                    b.connectTimeout(connectionTimeout, MILLISECONDS);
+                    b.readTimeout(connectionTimeout, MILLISECONDS);
+                })
+                .applyToClusterSettings( b -> b.serverSelectionTimeout(connectionTimeout, MILLISECONDS))
+                .applyConnectionString(new ConnectionString(dbConnectionString));
+
+        if (!isBlank(trustStoreLocation) && !isBlank(trustStorePassword)) {
+            builder.applyToSslSettings(sslSettingsBuilder -> loadCustomTrustStore(sslSettingsBuilder, trustStoreLocation, trustStorePassword));
+        }
+
+//    TODO We should also support other AuthenticationMechanisms
+//    String user = "xxxx"; // the user name
+//    String database = "admin"; // the name of the database in which the user is defined
+//    char[] password = "xxxx".toCharArray(); // the password as a character array
+//    MongoCredential credential = MongoCredential.createCredential(user, database, password);
+//    builder.credential(credential);
+
+        customizer.customize(builder);
+        return builder.build();
+    }
+
+    @SneakyThrows
+    private static void loadCustomTrustStore(final SslSettings.Builder builder, final String trustStoreLocation,
+                                             final String trustStorePassword) {
+        try (final InputStream inputStream = new ClassPathResource(trustStoreLocation).getInputStream()) {
+            final KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            trustStore.load(inputStream, trustStorePassword.toCharArray());
+            builder.context(new SSLContextBuilder()
+                    .loadTrustMaterial(
+                            trustStore, null
+                    ).build()
+            );
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+/**
+ * What to do with an interaction when the in-memory write queue is full.
+ */
+public enum OverflowPolicy {
+    /** Evict the oldest queued interaction to make room for the new one. */
+    DROP_OLDEST,
+    /** Discard the new interaction and keep the queue as it is. */
+    DROP_NEWEST,
+    /** Block the caller until the flusher has made room in the queue. */
+    BLOCK
+}
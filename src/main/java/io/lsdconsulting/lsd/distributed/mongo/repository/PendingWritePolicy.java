@@ -0,0 +1,11 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+/**
+ * What to do with interactions saved before the repository has finished initialising.
+ */
+public enum PendingWritePolicy {
+    /** Hold them in a bounded in-memory buffer, evicting the oldest when full, and persist them once the repository is active. */
+    BUFFER,
+    /** Discard them. */
+    DROP
+}
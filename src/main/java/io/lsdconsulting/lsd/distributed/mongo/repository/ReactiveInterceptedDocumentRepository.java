@@ -0,0 +1,15 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link io.lsdconsulting.lsd.distributed.access.repository.InterceptedDocumentRepository}.
+ */
+public interface ReactiveInterceptedDocumentRepository {
+
+    Mono<Void> saveReactive(InterceptedInteraction interceptedInteraction);
+
+    Flux<InterceptedInteraction> findByTraceIdsReactive(String... traceId);
+}
@@ -0,0 +1,45 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Receives measurements from the repository. Every method defaults to doing nothing,
+ * so an implementation only needs to override what it records.
+ */
+public interface RepositoryMetrics {
+
+    RepositoryMetrics NOOP = new RepositoryMetrics() {
+    };
+
+    default void saved(long durationNanos, int documents, long bytes) {
+    }
+
+    default void skipped(int documents) {
+    }
+
+    default void spooled(int documents) {
+    }
+
+    default void replayed(int documents) {
+    }
+
+    default void found(long durationNanos, int results) {
+    }
+
+    default void cacheHits(int traces) {
+    }
+
+    default void cacheMisses(int traces) {
+    }
+
+    default void failed(String operation, Exception exception) {
+    }
+
+    /**
+     * Reports the state of the repository, read through the given functions, which must not hold on to it.
+     * Implementations should not keep the repository from being garbage collected either.
+     */
+    default <T> void monitor(T repository, Function<T, RepositoryState> state, Predicate<T> circuitOpen) {
+    }
+}
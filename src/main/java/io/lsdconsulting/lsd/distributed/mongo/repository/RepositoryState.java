@@ -0,0 +1,15 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+/**
+ * Where a repository is in its lifecycle.
+ */
+public enum RepositoryState {
+    /** Preparing the database in the background; interactions saved meanwhile are handled by the {@link PendingWritePolicy}. */
+    INITIALISING,
+    /** Reading and writing. */
+    ACTIVE,
+    /** Without a database to connect to, so interactions are discarded. */
+    DISABLED,
+    /** Closed, so interactions are discarded and nothing is found. */
+    CLOSED
+}
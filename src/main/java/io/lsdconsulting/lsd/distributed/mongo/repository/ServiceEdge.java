@@ -0,0 +1,35 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import lombok.Builder;
+import lombok.Value;
+import org.bson.Document;
+
+/**
+ * The calls made by one service to a target, computed by the database.
+ */
+@Value
+@Builder
+public class ServiceEdge {
+
+    String serviceName;
+    String target;
+    /**
+     * The number of interactions other than responses - requests, and messages published or consumed.
+     */
+    long callCount;
+    /**
+     * The mean elapsed time of the responses, in milliseconds; null when no response recorded one.
+     */
+    Double averageElapsedTime;
+
+    static ServiceEdge fromDocument(final Document document) {
+        final Document edge = document.get("_id", Document.class);
+        final long elapsedTimeCount = document.get("elapsedTimeCount", Number.class).longValue();
+        return ServiceEdge.builder()
+                .serviceName(edge.getString("serviceName"))
+                .target(edge.getString("target"))
+                .callCount(document.get("callCount", Number.class).longValue())
+                .averageElapsedTime(elapsedTimeCount > 0 ? document.get("elapsedTimeSum", Number.class).doubleValue() / elapsedTimeCount : null)
+                .build();
+    }
+}
@@ -0,0 +1,13 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+/**
+ * How intercepted interactions are stored and expired.
+ */
+public enum StorageLayout {
+    /** A single capped collection of a fixed size, evicting the oldest interactions first. */
+    CAPPED,
+    /** A single collection whose interactions expire through a TTL index on {@code createdAt}. Can be sharded. */
+    TTL,
+    /** One collection per UTC day of {@code createdAt}, dropped whole once past retention. */
+    DAILY_BUCKETS
+}
@@ -0,0 +1,218 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
+
+/**
+ * Holds recently read traces in memory, evicting the least recently used once their estimated size exceeds
+ * {@code maxWeightBytes}, and dropping each {@code ttlMillis} after it was loaded.
+ * <p>
+ * The repository invalidates a trace whenever it persists an interaction of it. A trace is reserved before it is
+ * loaded and only cached if no write invalidated the reservation meanwhile, so a load racing a write never caches
+ * the trace as it was before the write. Writes made through other repository instances are only picked up once the
+ * trace expires.
+ * <p>
+ * Interactions are mutable, so the cache keeps copies of those it is given and hands out copies of those it holds.
+ */
+public class TraceCache {
+
+    public static final long DEFAULT_MAX_WEIGHT_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000L;
+
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 8;
+    private static final int INTERACTION_SIZE = 128;
+
+    private final long maxWeightBytes;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final LinkedHashMap<String, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+
+    @Builder
+    private TraceCache(final Long maxWeightBytes, final Long ttlMillis) {
+        this(defaultIfNull(maxWeightBytes, DEFAULT_MAX_WEIGHT_BYTES), defaultIfNull(ttlMillis, DEFAULT_TTL_MILLIS), System::nanoTime);
+    }
+
+    TraceCache(final long maxWeightBytes, final long ttlMillis, final LongSupplier ticker) {
+        this.maxWeightBytes = maxWeightBytes;
+        this.ttlNanos = MILLISECONDS.toNanos(ttlMillis);
+        this.ticker = ticker;
+    }
+
+    /**
+     * The cached interactions of those of the given traces that are cached and not expired.
+     */
+    synchronized Map<String, List<InterceptedInteraction>> getAllPresent(final Collection<String> traceIds) {
+        final Map<String, List<InterceptedInteraction>> present = new HashMap<>();
+        final long now = ticker.getAsLong();
+        for (final String traceId : traceIds) {
+            final Object entry = entries.get(traceId);
+            if (entry instanceof Entry) {
+                if (((Entry) entry).expiresAt - now > 0) {
+                    present.put(traceId, copy(((Entry) entry).interactions));
+                } else {
+                    remove(traceId);
+                }
+            }
+        }
+        return present;
+    }
+
+    /**
+     * Marks the given traces as being loaded. The returned reservation is passed to {@link #complete} once loaded.
+     */
+    synchronized Object reserve(final Collection<String> traceIds) {
+        final Object reservation = new Object();
+        for (final String traceId : traceIds) {
+            remove(traceId);
+            entries.put(traceId, reservation);
+        }
+        return reservation;
+    }
+
+    /**
+     * Caches the loaded traces still reserved by the given reservation, and releases the rest of its reservations.
+     * Traces loaded without any interactions are not cached, as their interactions may not have been written yet.
+     */
+    synchronized void complete(final Object reservation, final Map<String, List<InterceptedInteraction>> loaded) {
+        final long expiresAt = ticker.getAsLong() + ttlNanos;
+        final Iterator<Map.Entry<String, Object>> iterator = entries.entrySet().iterator();
+        final Map<String, Entry> completed = new LinkedHashMap<>();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Object> entry = iterator.next();
+            if (entry.getValue() == reservation) {
+                iterator.remove();
+                final List<InterceptedInteraction> interactions = loaded.get(entry.getKey());
+                if (interactions != null && !interactions.isEmpty()) {
+                    final long entryWeight = weigh(entry.getKey(), interactions);
+                    if (entryWeight <= maxWeightBytes) {
+                        completed.put(entry.getKey(), new Entry(copy(interactions), entryWeight, expiresAt));
+                    }
+                }
+            }
+        }
+        completed.forEach((traceId, entry) -> {
+            entries.put(traceId, entry);
+            weight += entry.weight;
+        });
+        evict();
+    }
+
+    synchronized void invalidate(final String traceId) {
+        remove(traceId);
+    }
+
+    synchronized long getWeight() {
+        return weight;
+    }
+
+    synchronized int size() {
+        return (int) entries.values().stream().filter(Entry.class::isInstance).count();
+    }
+
+    private void remove(final String traceId) {
+        final Object removed = entries.remove(traceId);
+        if (removed instanceof Entry) {
+            weight -= ((Entry) removed).weight;
+        }
+    }
+
+    private void evict() {
+        final Iterator<Object> eldestFirst = entries.values().iterator();
+        while (weight > maxWeightBytes && eldestFirst.hasNext()) {
+            final Object entry = eldestFirst.next();
+            if (entry instanceof Entry) {
+                eldestFirst.remove();
+                weight -= ((Entry) entry).weight;
+            }
+        }
+    }
+
+    private static List<InterceptedInteraction> copy(final List<InterceptedInteraction> interactions) {
+        final List<InterceptedInteraction> copies = new ArrayList<>(interactions.size());
+        for (final InterceptedInteraction interaction : interactions) {
+            copies.add(InterceptedInteraction.builder()
+                    .traceId(interaction.getTraceId())
+                    .body(interaction.getBody())
+                    .requestHeaders(copy(interaction.getRequestHeaders()))
+                    .responseHeaders(copy(interaction.getResponseHeaders()))
+                    .serviceName(interaction.getServiceName())
+                    .target(interaction.getTarget())
+                    .path(interaction.getPath())
+                    .httpStatus(interaction.getHttpStatus())
+                    .httpMethod(interaction.getHttpMethod())
+                    .type(interaction.getType())
+                    .profile(interaction.getProfile())
+                    .elapsedTime(interaction.getElapsedTime())
+                    .createdAt(interaction.getCreatedAt())
+                    .build());
+        }
+        return copies;
+    }
+
+    private static Map<String, Collection<String>> copy(final Map<String, Collection<String>> headers) {
+        if (headers == null) {
+            return null;
+        }
+        final Map<String, Collection<String>> copies = new LinkedHashMap<>();
+        headers.forEach((name, values) -> copies.put(name, values != null ? new ArrayList<>(values) : null));
+        return copies;
+    }
+
+    /**
+     * Estimates the heap taken by a trace from the length of its strings, which dominate the size of an interaction.
+     */
+    static long weigh(final String traceId, final List<InterceptedInteraction> interactions) {
+        long weight = OBJECT_OVERHEAD + weigh(traceId);
+        for (final InterceptedInteraction interaction : interactions) {
+            weight += REFERENCE_SIZE + INTERACTION_SIZE
+                    + weigh(interaction.getTraceId()) + weigh(interaction.getBody())
+                    + weigh(interaction.getServiceName()) + weigh(interaction.getTarget())
+                    + weigh(interaction.getPath()) + weigh(interaction.getHttpStatus())
+                    + weigh(interaction.getHttpMethod()) + weigh(interaction.getProfile())
+                    + weigh(interaction.getRequestHeaders()) + weigh(interaction.getResponseHeaders());
+        }
+        return weight;
+    }
+
+    private static long weigh(final Map<String, Collection<String>> headers) {
+        long weight = 0;
+        if (headers != null) {
+            for (final Map.Entry<String, Collection<String>> header : headers.entrySet()) {
+                weight += OBJECT_OVERHEAD + weigh(header.getKey());
+                if (header.getValue() != null) {
+                    for (final String value : header.getValue()) {
+                        weight += REFERENCE_SIZE + weigh(value);
+                    }
+                }
+            }
+        }
+        return weight;
+    }
+
+    private static long weigh(final String value) {
+        return value != null ? OBJECT_OVERHEAD + 2L * value.length() : 0;
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+        private final List<InterceptedInteraction> interactions;
+        private final long weight;
+        private final long expiresAt;
+    }
+}
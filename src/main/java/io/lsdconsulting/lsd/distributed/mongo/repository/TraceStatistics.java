@@ -0,0 +1,33 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import lombok.Builder;
+import lombok.Value;
+import org.bson.Document;
+
+/**
+ * Aggregate figures for a single trace, computed by the database.
+ */
+@Value
+@Builder
+public class TraceStatistics {
+
+    String traceId;
+    long interactionCount;
+    /**
+     * The sum of the elapsed time of every interaction in the trace, in milliseconds.
+     */
+    long totalElapsedTime;
+    /**
+     * The number of interactions with a 4xx or 5xx HTTP status.
+     */
+    long errorCount;
+
+    static TraceStatistics fromDocument(final Document document) {
+        return TraceStatistics.builder()
+                .traceId(document.getString("_id"))
+                .interactionCount(document.get("interactionCount", Number.class).longValue())
+                .totalElapsedTime(document.get("totalElapsedTime", Number.class).longValue())
+                .errorCount(document.get("errorCount", Number.class).longValue())
+                .build();
+    }
+}
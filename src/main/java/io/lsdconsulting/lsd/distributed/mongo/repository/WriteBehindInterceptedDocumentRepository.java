@@ -0,0 +1,248 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.access.repository.InterceptedDocumentRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Queues intercepted interactions in memory and persists them in unordered batches on a background thread,
+ * so that {@link #save(InterceptedInteraction)} never waits for a database round-trip. Interactions saved once the
+ * repository is closed are rejected and counted as dropped.
+ */
+@Slf4j
+public class WriteBehindInterceptedDocumentRepository implements InterceptedDocumentRepository, AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+    public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_OLDEST;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final InterceptedDocumentMongoRepository delegate;
+    private final BlockingQueue<InterceptedInteraction> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Thread flusher;
+    /**
+     * Saves hold the read lock while queueing, so that none can slip into the queue after closing has stopped the
+     * flusher and its final drain.
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean running = true;
+    /**
+     * Set when closing gives up waiting for the flusher, which then stops without persisting the rest of the queue.
+     */
+    private volatile boolean abandoned;
+
+    public WriteBehindInterceptedDocumentRepository(final InterceptedDocumentMongoRepository delegate) {
+        this(delegate, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_OVERFLOW_POLICY);
+    }
+
+    public WriteBehindInterceptedDocumentRepository(final InterceptedDocumentMongoRepository delegate, final int queueCapacity,
+                                                    final int batchSize, final long flushIntervalMillis,
+                                                    final OverflowPolicy overflowPolicy) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = MILLISECONDS.toNanos(flushIntervalMillis);
+        this.flusher = new Thread(this::flushLoop, "lsd-mongo-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void save(final InterceptedInteraction interceptedInteraction) {
+        final Lock accepting = closeLock.readLock();
+        accepting.lock();
+        try {
+            if (running) {
+                enqueue(interceptedInteraction);
+            } else {
+                final long count = droppedCount.incrementAndGet();
+                log.debug("Rejected interceptedInteraction as the LSD write-behind repository is closed - traceId:{}, totalDropped:{}", interceptedInteraction.getTraceId(), count);
+            }
+        } finally {
+            accepting.unlock();
+        }
+    }
+
+    private void enqueue(final InterceptedInteraction interceptedInteraction) {
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(interceptedInteraction);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped(interceptedInteraction);
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(interceptedInteraction)) {
+                    dropped(interceptedInteraction);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(interceptedInteraction)) {
+                    final InterceptedInteraction evicted = queue.poll();
+                    if (evicted != null) {
+                        dropped(evicted);
+                    }
+                }
+                break;
+        }
+    }
+
+    @Override
+    public List<InterceptedInteraction> findByTraceIds(final String... traceId) {
+        return delegate.findByTraceIds(traceId);
+    }
+
+    public Stream<InterceptedInteraction> streamByTraceIds(final String... traceId) {
+        return delegate.streamByTraceIds(traceId);
+    }
+
+    public List<InterceptedInteractionSummary> findSummariesByTraceIds(final String... traceId) {
+        return delegate.findSummariesByTraceIds(traceId);
+    }
+
+    public Optional<InterceptedInteraction> findById(final String id) {
+        return delegate.findById(id);
+    }
+
+    public InterceptedInteractionPage findInteractions(final InteractionQuery query) {
+        return delegate.findInteractions(query);
+    }
+
+    public List<TraceStatistics> findTraceStatistics(final String... traceId) {
+        return delegate.findTraceStatistics(traceId);
+    }
+
+    public List<ServiceEdge> findServiceEdges(final Instant from, final Instant to) {
+        return delegate.findServiceEdges(from, to);
+    }
+
+    public List<String> findTraceIds(final Instant from, final Instant to) {
+        return delegate.findTraceIds(from, to);
+    }
+
+    /**
+     * Interactions still queued are delivered once they are persisted.
+     */
+    public InteractionSubscription subscribe(final InteractionSubscriptionQuery query, final InteractionListener listener) {
+        return delegate.subscribe(query, listener);
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting new interactions into the queue, waits for everything already queued to be persisted
+     * and then closes the underlying repository. If that takes too long, the flusher is interrupted, and the
+     * underlying repository only closed once it has stopped; what is left in the queue is counted as dropped.
+     */
+    @Override
+    public void close() {
+        final Lock closing = closeLock.writeLock();
+        closing.lock();
+        try {
+            running = false;
+        } finally {
+            closing.unlock();
+        }
+        try {
+            flusher.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            abandoned = true;
+            flusher.interrupt();
+            try {
+                flusher.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            final List<InterceptedInteraction> undrained = new ArrayList<>();
+            queue.drainTo(undrained);
+            droppedCount.addAndGet(undrained.size());
+            log.warn("Timed out flushing the LSD write-behind queue, interrupted the flusher - {} queued interceptedInteractions not persisted", undrained.size());
+        }
+        delegate.close();
+    }
+
+    private void flushLoop() {
+        final List<InterceptedInteraction> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                fillBatch(batch);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            flush(batch);
+        }
+        while (!abandoned && queue.drainTo(batch, batchSize) > 0) {
+            flush(batch);
+        }
+    }
+
+    private void fillBatch(final List<InterceptedInteraction> batch) throws InterruptedException {
+        final long deadline = nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            final long remaining = deadline - nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            final InterceptedInteraction next = queue.poll(remaining, NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void flush(final List<InterceptedInteraction> batch) {
+        if (!batch.isEmpty()) {
+            try {
+                delegate.saveAll(batch);
+            } catch (final RuntimeException e) {
+                log.error("Failed to flush {} interceptedInteractions - message:{}", batch.size(), e.getMessage(), e);
+                if (abandoned) {
+                    droppedCount.addAndGet(batch.size());
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void dropped(final InterceptedInteraction interceptedInteraction) {
+        final long count = droppedCount.incrementAndGet();
+        log.trace("Dropped interceptedInteraction due to a full write queue - traceId:{}, totalDropped:{}", interceptedInteraction.getTraceId(), count);
+    }
+}
@@ -0,0 +1,163 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository.codec;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Deflates large string values of an interaction - the body and individual header values - before they are stored.
+ * <p>
+ * Values shorter than the threshold, or that would not get any smaller, are stored as they are. Compression can be
+ * primed with preset dictionaries holding the payload shapes that repeat across interactions: the first one is used
+ * for compressing, and all of them remain available for reading documents compressed with an earlier dictionary.
+ * Documents holding compressed values can always be read, whether or not compression is enabled.
+ * <p>
+ * Deflaters and inflaters hold native memory until they are ended, so a few of each are pooled for reuse and the
+ * rest ended as soon as they are released. {@link #close()} ends the pooled ones. Values are inflated into buffers
+ * pooled the same way, so that their memory is bounded by the pool rather than by the number of threads.
+ */
+@Slf4j
+public final class Compression implements AutoCloseable {
+
+    public static final String DEFLATE = "deflate";
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    public static final Compression NONE = new Compression(false, Integer.MAX_VALUE, List.of());
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private final boolean enabled;
+    private final int threshold;
+    private final byte[] dictionary;
+    private final Map<Integer, byte[]> dictionariesById = new HashMap<>();
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    /**
+     * Grown as needed while inflating, and only pooled again up to a limit.
+     */
+    private final BlockingQueue<byte[]> inflateBuffers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private Compression(final boolean enabled, final int threshold, final List<byte[]> dictionaries) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.dictionary = dictionaries.isEmpty() ? null : dictionaries.get(0);
+        for (final byte[] candidate : dictionaries) {
+            final Adler32 adler32 = new Adler32();
+            adler32.update(candidate);
+            dictionariesById.put((int) adler32.getValue(), candidate);
+        }
+    }
+
+    /**
+     * @param threshold    the length, in characters, from which a value is compressed
+     * @param dictionaries preset dictionaries, the first of which is used for compressing
+     */
+    public static Compression deflate(final int threshold, final List<byte[]> dictionaries) {
+        return new Compression(true, threshold, dictionaries);
+    }
+
+    boolean shouldCompress(final String value) {
+        return enabled && value != null && value.length() >= threshold;
+    }
+
+    /**
+     * @return the compressed value, or null if compressing would not make it smaller
+     */
+    byte[] compress(final String value) {
+        final byte[] input = value.getBytes(UTF_8);
+        final Deflater pooled = deflaters.poll();
+        final Deflater deflater = pooled != null ? pooled : new Deflater();
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input);
+            deflater.finish();
+            final byte[] output = new byte[input.length];
+            final int length = deflater.deflate(output);
+            return deflater.finished() && length < input.length ? Arrays.copyOf(output, length) : null;
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * @return the original value, or null if it cannot be restored - for example when it was compressed with a
+     * dictionary that is no longer configured
+     */
+    String decompress(final String algorithm, final byte[] compressed) {
+        if (!DEFLATE.equals(algorithm)) {
+            log.warn("Skipping a value compressed with an unsupported algorithm - algorithm:{}", algorithm);
+            return null;
+        }
+        final Inflater pooled = inflaters.poll();
+        final Inflater inflater = pooled != null ? pooled : new Inflater();
+        inflater.setInput(compressed);
+        final byte[] pooledBuffer = inflateBuffers.poll();
+        byte[] output = pooledBuffer != null ? pooledBuffer : new byte[BUFFER_SIZE];
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                final int inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    final byte[] presetDictionary = dictionariesById.get(inflater.getAdler());
+                    if (presetDictionary == null) {
+                        throw new DataFormatException("Unknown preset dictionary " + Integer.toHexString(inflater.getAdler()));
+                    }
+                    inflater.setDictionary(presetDictionary);
+                } else if (inflated == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("Truncated compressed value");
+                }
+                length += inflated;
+            }
+            return new String(output, 0, length, UTF_8);
+        } catch (final DataFormatException e) {
+            log.warn("Skipping a compressed value that cannot be restored - message:{}", e.getMessage());
+            return null;
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) {
+                inflater.end();
+            }
+            if (output.length <= MAX_RETAINED_BUFFER_SIZE) {
+                inflateBuffers.offer(output);
+            }
+        }
+    }
+
+    /**
+     * Ends the pooled deflaters and inflaters, and releases the pooled buffers. Compression keeps working afterwards,
+     * on fresh ones.
+     */
+    @Override
+    public void close() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+        inflateBuffers.clear();
+    }
+}
@@ -0,0 +1,256 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository.codec;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import org.bson.BsonBinary;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes {@link InterceptedInteraction} field by field, producing the same document shape as the automatic POJO codec
+ * (property names as keys, null properties omitted) without its reflection and property discovery.
+ * <p>
+ * With {@link Compression} enabled, a large body or header value is stored as compressed binary data instead, and the
+ * algorithm is recorded in the document's {@code compression} field. Compressed values are restored when decoding.
+ */
+public class InterceptedInteractionCodec implements Codec<InterceptedInteraction> {
+
+    static final String ID = "_id";
+    static final String COMPRESSION = "compression";
+
+    static final String TRACE_ID = "traceId";
+    static final String BODY = "body";
+    static final String REQUEST_HEADERS = "requestHeaders";
+    static final String RESPONSE_HEADERS = "responseHeaders";
+    static final String SERVICE_NAME = "serviceName";
+    static final String TARGET = "target";
+    static final String PATH = "path";
+    static final String HTTP_STATUS = "httpStatus";
+    static final String HTTP_METHOD = "httpMethod";
+    static final String TYPE = "type";
+    static final String PROFILE = "profile";
+    static final String ELAPSED_TIME = "elapsedTime";
+    static final String CREATED_AT = "createdAt";
+
+    private final Compression compression;
+
+    public InterceptedInteractionCodec() {
+        this(Compression.NONE);
+    }
+
+    public InterceptedInteractionCodec(final Compression compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public void encode(final BsonWriter writer, final InterceptedInteraction value, final EncoderContext encoderContext) {
+        encode(writer, value, (ObjectId) null);
+    }
+
+    /**
+     * Writes the interaction under the given id rather than leaving the database to assign one, so that writing the
+     * same document again is recognised as a duplicate.
+     */
+    public void encode(final BsonWriter writer, final InterceptedInteraction value, final ObjectId id) {
+        writer.writeStartDocument();
+        if (id != null) {
+            writer.writeObjectId(ID, id);
+        }
+        if (hasCompressibleValues(value)) {
+            writer.writeString(COMPRESSION, Compression.DEFLATE);
+        }
+        writeString(writer, TRACE_ID, value.getTraceId());
+        writeCompressible(writer, BODY, value.getBody());
+        writeHeaders(writer, REQUEST_HEADERS, value.getRequestHeaders());
+        writeHeaders(writer, RESPONSE_HEADERS, value.getResponseHeaders());
+        writeString(writer, SERVICE_NAME, value.getServiceName());
+        writeString(writer, TARGET, value.getTarget());
+        writeString(writer, PATH, value.getPath());
+        writeString(writer, HTTP_STATUS, value.getHttpStatus());
+        writeString(writer, HTTP_METHOD, value.getHttpMethod());
+        if (value.getType() != null) {
+            writer.writeString(TYPE, value.getType().name());
+        }
+        writeString(writer, PROFILE, value.getProfile());
+        if (value.getElapsedTime() != null) {
+            writer.writeInt64(ELAPSED_TIME, value.getElapsedTime());
+        }
+        if (value.getCreatedAt() != null) {
+            writer.writeDateTime(CREATED_AT, ZonedDateTimeCodec.toEpochMilli(value.getCreatedAt()));
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public InterceptedInteraction decode(final BsonReader reader, final DecoderContext decoderContext) {
+        final InterceptedInteraction.InterceptedInteractionBuilder builder = InterceptedInteraction.builder();
+        String algorithm = null;
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            final String name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case COMPRESSION:
+                    algorithm = reader.readString();
+                    break;
+                case TRACE_ID:
+                    builder.traceId(reader.readString());
+                    break;
+                case BODY:
+                    builder.body(readCompressible(reader, algorithm));
+                    break;
+                case REQUEST_HEADERS:
+                    builder.requestHeaders(readHeaders(reader, algorithm));
+                    break;
+                case RESPONSE_HEADERS:
+                    builder.responseHeaders(readHeaders(reader, algorithm));
+                    break;
+                case SERVICE_NAME:
+                    builder.serviceName(reader.readString());
+                    break;
+                case TARGET:
+                    builder.target(reader.readString());
+                    break;
+                case PATH:
+                    builder.path(reader.readString());
+                    break;
+                case HTTP_STATUS:
+                    builder.httpStatus(reader.readString());
+                    break;
+                case HTTP_METHOD:
+                    builder.httpMethod(reader.readString());
+                    break;
+                case TYPE:
+                    builder.type(TypeCodec.forName(reader.readString()));
+                    break;
+                case PROFILE:
+                    builder.profile(reader.readString());
+                    break;
+                case ELAPSED_TIME:
+                    builder.elapsedTime(readLong(reader));
+                    break;
+                case CREATED_AT:
+                    builder.createdAt(ZonedDateTimeCodec.fromEpochMilli(reader.readDateTime()));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return builder.build();
+    }
+
+    @Override
+    public Class<InterceptedInteraction> getEncoderClass() {
+        return InterceptedInteraction.class;
+    }
+
+    private static void writeString(final BsonWriter writer, final String name, final String value) {
+        if (value != null) {
+            writer.writeString(name, value);
+        }
+    }
+
+    private boolean hasCompressibleValues(final InterceptedInteraction value) {
+        return compression.shouldCompress(value.getBody())
+                || hasCompressibleValues(value.getRequestHeaders())
+                || hasCompressibleValues(value.getResponseHeaders());
+    }
+
+    private boolean hasCompressibleValues(final Map<String, Collection<String>> headers) {
+        return headers != null && headers.values().stream()
+                .anyMatch(values -> values != null && values.stream().anyMatch(compression::shouldCompress));
+    }
+
+    private void writeCompressible(final BsonWriter writer, final String name, final String value) {
+        final byte[] compressed = compression.shouldCompress(value) ? compression.compress(value) : null;
+        if (compressed != null) {
+            writer.writeBinaryData(name, new BsonBinary(compressed));
+        } else {
+            writeString(writer, name, value);
+        }
+    }
+
+    private String readCompressible(final BsonReader reader, final String algorithm) {
+        if (reader.getCurrentBsonType() == BsonType.BINARY) {
+            return compression.decompress(algorithm, reader.readBinaryData().getData());
+        }
+        return reader.readString();
+    }
+
+    private void writeHeaders(final BsonWriter writer, final String name, final Map<String, Collection<String>> headers) {
+        if (headers == null) {
+            return;
+        }
+        writer.writeStartDocument(name);
+        for (final Map.Entry<String, Collection<String>> header : headers.entrySet()) {
+            if (header.getValue() == null) {
+                writer.writeNull(header.getKey());
+                continue;
+            }
+            writer.writeStartArray(header.getKey());
+            for (final String value : header.getValue()) {
+                final byte[] compressed = compression.shouldCompress(value) ? compression.compress(value) : null;
+                if (value == null) {
+                    writer.writeNull();
+                } else if (compressed != null) {
+                    writer.writeBinaryData(new BsonBinary(compressed));
+                } else {
+                    writer.writeString(value);
+                }
+            }
+            writer.writeEndArray();
+        }
+        writer.writeEndDocument();
+    }
+
+    private Map<String, Collection<String>> readHeaders(final BsonReader reader, final String algorithm) {
+        final Map<String, Collection<String>> headers = new LinkedHashMap<>();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            final String name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                headers.put(name, null);
+                continue;
+            }
+            final Collection<String> values = new ArrayList<>(1);
+            reader.readStartArray();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                if (reader.getCurrentBsonType() == BsonType.NULL) {
+                    reader.readNull();
+                    values.add(null);
+                } else {
+                    values.add(readCompressible(reader, algorithm));
+                }
+            }
+            reader.readEndArray();
+            headers.put(name, values);
+        }
+        reader.readEndDocument();
+        return headers;
+    }
+
+    private static Long readLong(final BsonReader reader) {
+        switch (reader.getCurrentBsonType()) {
+            case INT32:
+                return (long) reader.readInt32();
+            case DOUBLE:
+                return (long) reader.readDouble();
+            default:
+                return reader.readInt64();
+        }
+    }
+}
@@ -10,6 +10,8 @@ import org.bson.codecs.EncoderContext;
 
 public class TypeCodec implements Codec<Type> {
 
+    private static final Type[] TYPES = Type.values();
+
     @SneakyThrows
     @Override
     public void encode(final BsonWriter writer, final Type value, final EncoderContext encoderContext) {
@@ -18,7 +20,22 @@ public class TypeCodec implements Codec<Type> {
 
     @Override
     public Type decode(final BsonReader reader, final DecoderContext decoderContext) {
-        return Type.valueOf(reader.readString());
+        return forName(reader.readString());
+    }
+
+    /**
+     * Same as {@link Type#valueOf}, but scans the handful of constants instead of hashing the name into the enum's
+     * lazily built name map, which is quicker for so few.
+     *
+     * @throws IllegalArgumentException if there is no such type
+     */
+    public static Type forName(final String name) {
+        for (final Type type : TYPES) {
+            if (type.name().equals(name)) {
+                return type;
+            }
+        }
+        return Type.valueOf(name);
     }
 
     @Override
@@ -7,21 +7,47 @@ import org.bson.codecs.Codec;
 import org.bson.codecs.DecoderContext;
 import org.bson.codecs.EncoderContext;
 
-import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.floorMod;
+
 public class ZonedDateTimeCodec  implements Codec<ZonedDateTime> {
 
+    /**
+     * The zone of every date decoded, looked up once rather than per document.
+     */
+    public static final ZoneId UTC = ZoneId.of("UTC");
+
     @SneakyThrows
     @Override
     public void encode(final BsonWriter writer, final ZonedDateTime value, final EncoderContext encoderContext) {
-        writer.writeDateTime(value.toInstant().toEpochMilli());
+        writer.writeDateTime(toEpochMilli(value));
     }
 
     @Override
     public ZonedDateTime decode(final BsonReader reader, final DecoderContext decoderContext) {
-        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(reader.readDateTime()), ZoneId.of("UTC"));
+        return fromEpochMilli(reader.readDateTime());
+    }
+
+    /**
+     * Equal to {@code ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.of("UTC"))}, without the
+     * intermediate {@link java.time.Instant} or the zone lookup.
+     */
+    public static ZonedDateTime fromEpochMilli(final long epochMilli) {
+        final LocalDateTime localDateTime = LocalDateTime.ofEpochSecond(floorDiv(epochMilli, 1000L),
+                (int) floorMod(epochMilli, 1000L) * 1_000_000, ZoneOffset.UTC);
+        return ZonedDateTime.ofInstant(localDateTime, ZoneOffset.UTC, UTC);
+    }
+
+    /**
+     * Same as {@code value.toInstant().toEpochMilli()}, without the intermediate {@link java.time.Instant}.
+     */
+    public static long toEpochMilli(final ZonedDateTime value) {
+        return value.toEpochSecond() * 1000L + value.getNano() / 1_000_000;
     }
 
     @Override
@@ -0,0 +1,169 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository.policy;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import lombok.Builder;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
+
+/**
+ * Trims and samples interactions before they are persisted:
+ * <ul>
+ *     <li>bodies longer than {@code maxBodySize} characters are truncated, ending with a marker giving the number of
+ *     characters removed</li>
+ *     <li>only the headers in {@code allowedHeaders} (when any are given) and not in {@code deniedHeaders} are kept,
+ *     matching names case-insensitively</li>
+ *     <li>interactions are kept at the sampling rate of the longest matching path prefix, else of their service, else
+ *     the default {@code samplingRate}</li>
+ * </ul>
+ * Sampling is keyed on a hash of the trace id rather than drawn at random, so every service keeps or drops the same
+ * traces. Where rates differ, a trace kept at a lower rate is also kept at every higher one.
+ */
+public class ConfigurableWritePolicy implements WritePolicy {
+
+    public static final String TRUNCATION_MARKER = "... [truncated %d characters]";
+
+    private static final Comparator<String> LONGEST_FIRST = Comparator.<String>comparingInt(String::length).reversed()
+            .thenComparing(Comparator.naturalOrder());
+
+    private final Integer maxBodySize;
+    private final Set<String> allowedHeaders;
+    private final Set<String> deniedHeaders;
+    private final double samplingRate;
+    private final Map<String, Double> serviceSamplingRates;
+    private final Map<String, Double> pathSamplingRates;
+
+    /**
+     * @param maxBodySize          the longest body kept in full; null to keep every body in full
+     * @param samplingRate         the fraction of traces kept, between 0 and 1; defaults to 1
+     * @param serviceSamplingRates rates by service name, overriding the default rate
+     * @param pathSamplingRates    rates by path prefix, overriding the service and default rates
+     */
+    @Builder
+    private ConfigurableWritePolicy(final Integer maxBodySize, final Collection<String> allowedHeaders,
+                                    final Collection<String> deniedHeaders, final Double samplingRate,
+                                    final Map<String, Double> serviceSamplingRates,
+                                    final Map<String, Double> pathSamplingRates) {
+        this.maxBodySize = maxBodySize;
+        this.allowedHeaders = caseInsensitive(allowedHeaders);
+        this.deniedHeaders = caseInsensitive(deniedHeaders);
+        this.samplingRate = defaultIfNull(samplingRate, 1.0);
+        this.serviceSamplingRates = defaultIfNull(serviceSamplingRates, Map.of());
+        this.pathSamplingRates = new TreeMap<>(LONGEST_FIRST);
+        this.pathSamplingRates.putAll(defaultIfNull(pathSamplingRates, Map.of()));
+    }
+
+    @Override
+    public InterceptedInteraction apply(final InterceptedInteraction interceptedInteraction) {
+        if (!sampled(interceptedInteraction)) {
+            return null;
+        }
+        final String body = truncate(interceptedInteraction.getBody());
+        final Map<String, Collection<String>> requestHeaders = filter(interceptedInteraction.getRequestHeaders());
+        final Map<String, Collection<String>> responseHeaders = filter(interceptedInteraction.getResponseHeaders());
+        if (body == interceptedInteraction.getBody()
+                && requestHeaders == interceptedInteraction.getRequestHeaders()
+                && responseHeaders == interceptedInteraction.getResponseHeaders()) {
+            return interceptedInteraction;
+        }
+        return InterceptedInteraction.builder()
+                .traceId(interceptedInteraction.getTraceId())
+                .body(body)
+                .requestHeaders(requestHeaders)
+                .responseHeaders(responseHeaders)
+                .serviceName(interceptedInteraction.getServiceName())
+                .target(interceptedInteraction.getTarget())
+                .path(interceptedInteraction.getPath())
+                .httpStatus(interceptedInteraction.getHttpStatus())
+                .httpMethod(interceptedInteraction.getHttpMethod())
+                .type(interceptedInteraction.getType())
+                .profile(interceptedInteraction.getProfile())
+                .elapsedTime(interceptedInteraction.getElapsedTime())
+                .createdAt(interceptedInteraction.getCreatedAt())
+                .build();
+    }
+
+    private boolean sampled(final InterceptedInteraction interceptedInteraction) {
+        final double rate = samplingRateOf(interceptedInteraction);
+        if (rate >= 1.0) {
+            return true;
+        }
+        final String traceId = interceptedInteraction.getTraceId();
+        final double position = traceId != null ? hashPosition(traceId) : ThreadLocalRandom.current().nextDouble();
+        return position < rate;
+    }
+
+    private double samplingRateOf(final InterceptedInteraction interceptedInteraction) {
+        final String path = interceptedInteraction.getPath();
+        if (path != null) {
+            for (final Map.Entry<String, Double> pathSamplingRate : pathSamplingRates.entrySet()) {
+                if (path.startsWith(pathSamplingRate.getKey())) {
+                    return pathSamplingRate.getValue();
+                }
+            }
+        }
+        final String serviceName = interceptedInteraction.getServiceName();
+        if (serviceName != null && serviceSamplingRates.containsKey(serviceName)) {
+            return serviceSamplingRates.get(serviceName);
+        }
+        return samplingRate;
+    }
+
+    /**
+     * Maps the trace id onto [0, 1). {@link String#hashCode()} is specified by the JLS, so every service computes the
+     * same position; the multiplication spreads trace ids that differ only in their last characters.
+     */
+    static double hashPosition(final String traceId) {
+        long hash = traceId.hashCode() * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    private String truncate(final String body) {
+        if (maxBodySize == null || body == null || body.length() <= maxBodySize) {
+            return body;
+        }
+        int end = maxBodySize;
+        if (end > 0 && Character.isHighSurrogate(body.charAt(end - 1))) {
+            end--;
+        }
+        return body.substring(0, end) + String.format(TRUNCATION_MARKER, body.length() - end);
+    }
+
+    private Map<String, Collection<String>> filter(final Map<String, Collection<String>> headers) {
+        if (headers == null || (allowedHeaders.isEmpty() && deniedHeaders.isEmpty())) {
+            return headers;
+        }
+        final Map<String, Collection<String>> filtered = new LinkedHashMap<>();
+        headers.forEach((name, values) -> {
+            if (kept(name)) {
+                filtered.put(name, values);
+            }
+        });
+        return filtered.size() == headers.size() ? headers : filtered;
+    }
+
+    private boolean kept(final String headerName) {
+        if (headerName == null) {
+            return allowedHeaders.isEmpty();
+        }
+        return (allowedHeaders.isEmpty() || allowedHeaders.contains(headerName)) && !deniedHeaders.contains(headerName);
+    }
+
+    private static Set<String> caseInsensitive(final Collection<String> headerNames) {
+        final Set<String> set = new TreeSet<>(CASE_INSENSITIVE_ORDER);
+        if (headerNames != null) {
+            set.addAll(headerNames);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,17 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository.policy;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+
+/**
+ * Decides, before it is encoded and inserted, whether and in what form an intercepted interaction is persisted.
+ */
+@FunctionalInterface
+public interface WritePolicy {
+
+    WritePolicy PERSIST_ALL = interceptedInteraction -> interceptedInteraction;
+
+    /**
+     * @return the interaction to persist, which may be a trimmed down copy, or null to skip it
+     */
+    InterceptedInteraction apply(InterceptedInteraction interceptedInteraction);
+}
@@ -0,0 +1,76 @@
+package io.lsdconsulting.lsd.distributed.mongo.config;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import io.lsdconsulting.lsd.distributed.mongo.repository.MongoClientSettingsCustomizer;
+import org.junit.jupiter.api.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ClientSettingsPropertiesTest {
+
+    @Test
+    public void shouldApplyPoolWriteConcernAndReadPreference() {
+        final MongoClientSettings settings = settings("mongodb://localhost:27017", ClientSettingsProperties.builder()
+                .maxPoolSize(200)
+                .minPoolSize(10)
+                .maxWaitTimeMillis(250L)
+                .writeConcern("1")
+                .journal(false)
+                .readPreference("secondaryPreferred")
+                .retryWrites(false)
+                .build());
+
+        assertThat(settings.getConnectionPoolSettings().getMaxSize(), is(200));
+        assertThat(settings.getConnectionPoolSettings().getMinSize(), is(10));
+        assertThat(settings.getConnectionPoolSettings().getMaxWaitTime(MILLISECONDS), is(250L));
+        assertThat(settings.getWriteConcern(), is(WriteConcern.W1.withJournal(false)));
+        assertThat(settings.getReadPreference(), is(ReadPreference.secondaryPreferred()));
+        assertThat(settings.getRetryWrites(), is(false));
+    }
+
+    @Test
+    public void shouldSupportUnacknowledgedAndMajorityWrites() {
+        assertThat(settings("mongodb://localhost:27017", ClientSettingsProperties.builder().writeConcern("0").build()).getWriteConcern(),
+                is(WriteConcern.UNACKNOWLEDGED));
+        assertThat(settings("mongodb://localhost:27017", ClientSettingsProperties.builder().writeConcern("majority").build()).getWriteConcern(),
+                is(WriteConcern.MAJORITY));
+    }
+
+    @Test
+    public void shouldKeepTheConnectionStringSettingsWhenNotSet() {
+        final MongoClientSettings settings = settings("mongodb://localhost:27017/?maxPoolSize=7&w=2&readPreference=nearest&retryWrites=false",
+                ClientSettingsProperties.builder().build());
+
+        assertThat(settings.getConnectionPoolSettings().getMaxSize(), is(7));
+        assertThat(settings.getWriteConcern(), is(new WriteConcern(2)));
+        assertThat(settings.getReadPreference(), is(ReadPreference.nearest()));
+        assertThat(settings.getRetryWrites(), is(false));
+    }
+
+    @Test
+    public void shouldKeepTheConnectionStringAcknowledgementWhenOnlyTheJournalIsSet() {
+        final MongoClientSettings settings = settings("mongodb://localhost:27017/?w=majority",
+                ClientSettingsProperties.builder().journal(true).build());
+
+        assertThat(settings.getWriteConcern(), is(WriteConcern.MAJORITY.withJournal(true)));
+    }
+
+    @Test
+    public void shouldRejectJournaledUnacknowledgedWrites() {
+        assertThrows(IllegalArgumentException.class, () -> ClientSettingsProperties.builder().writeConcern("0").journal(true).build());
+        assertThrows(IllegalArgumentException.class, () -> settings("mongodb://localhost:27017/?w=0",
+                ClientSettingsProperties.builder().journal(true).build()));
+    }
+
+    private static MongoClientSettings settings(final String connectionString, final MongoClientSettingsCustomizer customizer) {
+        final MongoClientSettings.Builder builder = MongoClientSettings.builder().applyConnectionString(new ConnectionString(connectionString));
+        customizer.customize(builder);
+        return builder.build();
+    }
+}
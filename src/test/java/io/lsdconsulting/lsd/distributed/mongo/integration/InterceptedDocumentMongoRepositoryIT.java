@@ -1,13 +1,31 @@
 package io.lsdconsulting.lsd.distributed.mongo.integration;
 
+import com.mongodb.ExplainVerbosity;
 import com.mongodb.client.ListIndexesIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
 import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.access.model.Type;
 import io.lsdconsulting.lsd.distributed.mongo.integration.testapp.TestApplication;
 import io.lsdconsulting.lsd.distributed.mongo.integration.testapp.config.RepositoryConfig;
 import io.lsdconsulting.lsd.distributed.mongo.integration.testapp.repository.TestRepository;
 import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InteractionQuery;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InteractionSubscription;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InteractionSubscriptionQuery;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedInteractionPage;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedInteractionSummary;
+import io.lsdconsulting.lsd.distributed.mongo.repository.ServiceEdge;
+import io.lsdconsulting.lsd.distributed.mongo.repository.StorageLayout;
+import io.lsdconsulting.lsd.distributed.mongo.repository.TraceCache;
+import io.lsdconsulting.lsd.distributed.mongo.repository.TraceStatistics;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.Compression;
 import org.bson.Document;
+import org.bson.types.Binary;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,14 +33,30 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Indexes.ascending;
+import static com.mongodb.client.model.Projections.include;
 import static io.lsdconsulting.lsd.distributed.access.model.Type.REQUEST;
+import static io.lsdconsulting.lsd.distributed.access.model.Type.RESPONSE;
 import static io.lsdconsulting.lsd.distributed.mongo.integration.testapp.repository.TestRepository.*;
 import static java.time.Instant.ofEpochSecond;
 import static java.time.ZonedDateTime.ofInstant;
+import static java.time.format.DateTimeFormatter.BASIC_ISO_DATE;
 import static java.util.stream.StreamSupport.stream;
+import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -40,6 +74,12 @@ class InterceptedDocumentMongoRepositoryIT {
     @BeforeEach
     void setup() {
         underTest = new InterceptedDocumentMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT,  1500, 1L);
+        await().until(underTest::isActive);
+    }
+
+    @AfterEach
+    void closeRepository() {
+        underTest.close();
     }
 
     @AfterAll
@@ -50,13 +90,68 @@ class InterceptedDocumentMongoRepositoryIT {
 
     @Test
     public void shouldCreateCollectionWithIndexes() {
-        final ListIndexesIterable<Document> indexes = testRepository.getCollection().listIndexes();
-        final List<String> indexNames = stream(indexes.spliterator(), false)
-                .map(doc -> (String) doc.get("name"))
-                .collect(Collectors.toList());
+        final List<String> indexNames = indexNames();
+
+        assertThat(indexNames, hasItem("traceId_1_createdAt_1"));
+        assertThat(indexNames, hasItem("createdAt_1"));
+    }
+
+    @Test
+    public void shouldDropLegacyTraceIdIndex() {
+        testRepository.getCollection().createIndex(ascending("traceId"));
+
+        try (final InterceptedDocumentMongoRepository migrating = new InterceptedDocumentMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT,  1500, 1L)) {
+            await().until(migrating::isActive);
+
+            assertThat(indexNames(), allOf(not(hasItem("traceId_1")), hasItem("traceId_1_createdAt_1"), hasItem("createdAt_1")));
+        }
+    }
 
-        assertThat(indexNames, hasItem(startsWith("traceId")));
-        assertThat(indexNames, hasItem(startsWith("createdAt")));
+    @Test
+    public void shouldServeTraceLookupsFromTheIndexWithoutSorting() {
+        final Document explanation = testRepository.getCollection()
+                .find(in("traceId", "traceId1", "traceId2"))
+                .sort(ascending("createdAt"))
+                .explain(ExplainVerbosity.QUERY_PLANNER);
+
+        final String winningPlan = explanation.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson();
+        assertThat(winningPlan, containsString("traceId_1_createdAt_1"));
+        assertThat(winningPlan, not(containsString("COLLSCAN")));
+        assertThat(winningPlan, not(containsString("\"SORT\"")));
+    }
+
+    @Test
+    public void shouldServeSummaryLookupsFromTheCoveringIndex() {
+        try (final MongoClient mongoClient = MongoClients.create("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)) {
+            final MongoDatabase database = mongoClient.getDatabase("lsdCovering");
+            final MongoCollection<Document> collection = database.getCollection("interceptedInteraction");
+            try (final InterceptedDocumentMongoRepository covering = InterceptedDocumentMongoRepository.builder()
+                    .mongoDatabase(database)
+                    .collectionSizeLimit(1L)
+                    .coveringIndex(true)
+                    .build()) {
+                await().until(covering::isActive);
+                covering.save(InterceptedInteraction.builder()
+                        .traceId("coveredTraceId")
+                        .serviceName("service")
+                        .body("body")
+                        .type(REQUEST)
+                        .createdAt(ofInstant(ofEpochSecond(0), ZoneId.of("UTC")))
+                        .build());
+
+                final Document explanation = collection
+                        .find(in("traceId", "coveredTraceId"))
+                        .projection(include("_id", "traceId", "serviceName", "target", "path", "type", "httpStatus", "elapsedTime", "createdAt"))
+                        .sort(ascending("createdAt"))
+                        .explain(ExplainVerbosity.EXECUTION_STATS);
+
+                assertThat(collection.listIndexes().map(index -> index.getString("name")).into(new ArrayList<>()),
+                        allOf(hasItem("traceId_1_createdAt_1_summary"), not(hasItem("traceId_1_createdAt_1"))));
+                assertThat(explanation.get("executionStats", Document.class).get("totalDocsExamined", Number.class).intValue(), is(0));
+                assertThat(covering.findSummariesByTraceIds("coveredTraceId"), hasSize(1));
+            }
+            database.drop();
+        }
     }
 
     @Test
@@ -92,4 +187,358 @@ class InterceptedDocumentMongoRepositoryIT {
         assertThat(result.get(0).getType(), is(REQUEST));
         assertThat(result.get(0).getCreatedAt(), is(ofInstant(ofEpochSecond(0), ZoneId.of("UTC"))));
     }
+
+    @Test
+    public void shouldRetrieveSummariesWithoutBodiesAndHeaders() {
+        underTest.save(InterceptedInteraction.builder()
+                .traceId("summaryTraceId")
+                .serviceName("service")
+                .target("target")
+                .path("/path")
+                .httpStatus("OK")
+                .elapsedTime(20L)
+                .body("body")
+                .requestHeaders(Map.of("Content-Type", List.of("application/json")))
+                .type(REQUEST)
+                .createdAt(ofInstant(ofEpochSecond(0), ZoneId.of("UTC")))
+                .build());
+
+        final List<InterceptedInteractionSummary> summaries = underTest.findSummariesByTraceIds("summaryTraceId");
+
+        assertThat(summaries, hasSize(1));
+        assertThat(summaries.get(0).getServiceName(), is("service"));
+        assertThat(summaries.get(0).getTarget(), is("target"));
+        assertThat(summaries.get(0).getElapsedTime(), is(20L));
+        assertThat(summaries.get(0).getType(), is(REQUEST));
+        assertThat(summaries.get(0).getCreatedAt(), is(ofInstant(ofEpochSecond(0), ZoneId.of("UTC"))));
+
+        final Optional<InterceptedInteraction> full = underTest.findById(summaries.get(0).getId());
+
+        assertTrue(full.isPresent());
+        assertThat(full.get().getBody(), is("body"));
+        assertThat(full.get().getRequestHeaders(), hasKey("Content-Type"));
+    }
+
+    @Test
+    public void shouldStreamTraceAcrossCursorBatches() {
+        try (final InterceptedDocumentMongoRepository smallBatches = InterceptedDocumentMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(1500)
+                .collectionSizeLimit(1L)
+                .cursorBatchSize(2)
+                .build()) {
+            await().until(smallBatches::isActive);
+            for (int i = 0; i < 5; i++) {
+                smallBatches.save(InterceptedInteraction.builder()
+                        .traceId("streamedTraceId")
+                        .body("body" + i)
+                        .type(REQUEST)
+                        .createdAt(ofInstant(ofEpochSecond(i), ZoneId.of("UTC")))
+                        .build());
+            }
+
+            try (Stream<InterceptedInteraction> result = smallBatches.streamByTraceIds("streamedTraceId")) {
+                assertThat(result.map(InterceptedInteraction::getBody).collect(Collectors.toList()),
+                        contains("body0", "body1", "body2", "body3", "body4"));
+            }
+        }
+    }
+
+    @Test
+    public void shouldStoreLargeBodiesCompressedAndRetrieveThemTransparently() {
+        try (final InterceptedDocumentMongoRepository compressing = InterceptedDocumentMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(1500)
+                .collectionSizeLimit(1L)
+                .compression(Compression.deflate(64, List.of()))
+                .build()) {
+            await().until(compressing::isActive);
+            final String body = "{\"key\":\"value\"}".repeat(100);
+            compressing.save(InterceptedInteraction.builder()
+                    .traceId("compressedTraceId")
+                    .body(body)
+                    .type(REQUEST)
+                    .createdAt(ofInstant(ofEpochSecond(0), ZoneId.of("UTC")))
+                    .build());
+
+            final Document stored = testRepository.getCollection().find(eq("traceId", "compressedTraceId")).first();
+
+            assertThat(stored.get("body"), instanceOf(Binary.class));
+            assertThat(stored.getString("compression"), is(Compression.DEFLATE));
+            assertThat(compressing.findByTraceIds("compressedTraceId").get(0).getBody(), is(body));
+            assertThat(underTest.findByTraceIds("compressedTraceId").get(0).getBody(), is(body));
+        }
+    }
+
+    @Test
+    public void shouldShareAnExistingClientWithoutClosingIt() {
+        try (final MongoClient mongoClient = MongoClients.create("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)) {
+            final InterceptedDocumentMongoRepository sharing = InterceptedDocumentMongoRepository.builder()
+                    .mongoClient(mongoClient)
+                    .build();
+            await().until(sharing::isActive);
+            sharing.save(InterceptedInteraction.builder()
+                    .traceId("sharedClientTraceId")
+                    .type(REQUEST)
+                    .createdAt(ofInstant(ofEpochSecond(0), ZoneId.of("UTC")))
+                    .build());
+
+            assertThat(sharing.findByTraceIds("sharedClientTraceId"), hasSize(1));
+
+            sharing.close();
+
+            assertThat(mongoClient.getDatabase("lsd").getCollection("interceptedInteraction").countDocuments(eq("traceId", "sharedClientTraceId")), is(1L));
+        }
+    }
+
+    @Test
+    public void shouldExpireInteractionsThroughATtlIndex() {
+        try (final MongoClient mongoClient = MongoClients.create("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)) {
+            final MongoDatabase database = mongoClient.getDatabase("lsdTtl");
+            try (final InterceptedDocumentMongoRepository expiring = InterceptedDocumentMongoRepository.builder()
+                    .mongoDatabase(database)
+                    .storageLayout(StorageLayout.TTL)
+                    .retentionDays(2)
+                    .build()) {
+                await().until(expiring::isActive);
+
+                final Document createdAtIndex = database.getCollection("interceptedInteraction").listIndexes()
+                        .into(new ArrayList<>()).stream()
+                        .filter(index -> index.get("key", Document.class).keySet().equals(Set.of("createdAt")))
+                        .findFirst().orElseThrow();
+
+                assertThat(((Number) createdAtIndex.get("expireAfterSeconds")).longValue(), is(2 * 24 * 60 * 60L));
+                assertThat(database.listCollections().filter(eq("name", "interceptedInteraction")).first()
+                        .get("options", Document.class).getBoolean("capped", false), is(false));
+            }
+            database.drop();
+        }
+    }
+
+    @Test
+    public void shouldWriteToAndReadFromDailyBuckets() {
+        try (final MongoClient mongoClient = MongoClients.create("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)) {
+            final MongoDatabase database = mongoClient.getDatabase("lsdBuckets");
+            final ZonedDateTime today = ZonedDateTime.now(ZoneId.of("UTC"));
+            try (final InterceptedDocumentMongoRepository bucketing = InterceptedDocumentMongoRepository.builder()
+                    .mongoDatabase(database)
+                    .storageLayout(StorageLayout.DAILY_BUCKETS)
+                    .retentionDays(3)
+                    .build()) {
+                await().until(bucketing::isActive);
+                database.getCollection("interceptedInteraction_" + today.minusDays(5).format(BASIC_ISO_DATE)).insertOne(new Document("traceId", "expired"));
+                bucketing.saveAll(List.of(
+                        InterceptedInteraction.builder().traceId("bucketTraceId").body("yesterday").type(REQUEST).createdAt(today.minusDays(1)).build(),
+                        InterceptedInteraction.builder().traceId("bucketTraceId").body("today").type(REQUEST).createdAt(today).build()));
+
+                assertThat(database.listCollectionNames().into(new ArrayList<>()), hasItems(
+                        "interceptedInteraction_" + today.minusDays(1).format(BASIC_ISO_DATE),
+                        "interceptedInteraction_" + today.format(BASIC_ISO_DATE),
+                        "interceptedInteraction_" + today.plusDays(1).format(BASIC_ISO_DATE)));
+                assertThat(bucketing.findByTraceIds("bucketTraceId").stream().map(InterceptedInteraction::getBody).collect(Collectors.toList()),
+                        contains("yesterday", "today"));
+                assertThat(bucketing.findByTraceIds(today.minusHours(1).toInstant(), null, "bucketTraceId"), hasSize(1));
+
+                bucketing.save(InterceptedInteraction.builder().traceId("lateTraceId").body("two days ago").type(REQUEST).createdAt(today.minusDays(2)).build());
+                final String lateId = bucketing.findSummariesByTraceIds("lateTraceId").get(0).getId();
+
+                assertThat(bucketing.findById(lateId).map(InterceptedInteraction::getBody), is(Optional.of("two days ago")));
+            }
+            try (final InterceptedDocumentMongoRepository restarted = InterceptedDocumentMongoRepository.builder()
+                    .mongoDatabase(database)
+                    .storageLayout(StorageLayout.DAILY_BUCKETS)
+                    .retentionDays(3)
+                    .build()) {
+                await().until(restarted::isActive);
+
+                assertThat(database.listCollectionNames().into(new ArrayList<>()),
+                        not(hasItem("interceptedInteraction_" + today.minusDays(5).format(BASIC_ISO_DATE))));
+            }
+            database.drop();
+        }
+    }
+
+    @Test
+    public void shouldPageThroughTheInteractionsOfAServiceInATimeWindow() {
+        try (final MongoClient mongoClient = MongoClients.create("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)) {
+            final MongoDatabase database = mongoClient.getDatabase("lsdQueries");
+            try (final InterceptedDocumentMongoRepository querying = InterceptedDocumentMongoRepository.builder()
+                    .mongoDatabase(database)
+                    .queryIndexes(true)
+                    .build()) {
+                await().until(querying::isActive);
+                final ZonedDateTime start = ofInstant(ofEpochSecond(1000), ZoneId.of("UTC"));
+                querying.saveAll(IntStream.range(0, 25)
+                        .mapToObj(i -> InterceptedInteraction.builder()
+                                .traceId("trace" + i)
+                                .serviceName(i % 5 == 0 ? "other" : "orders")
+                                .httpStatus("200 OK")
+                                .type(REQUEST)
+                                .createdAt(start.plusSeconds(i / 3))
+                                .build())
+                        .collect(Collectors.toList()));
+                final InteractionQuery query = InteractionQuery.builder()
+                        .serviceName("orders")
+                        .httpStatus("200 OK")
+                        .from(start.plusSeconds(1).toInstant())
+                        .to(start.plusSeconds(8).toInstant())
+                        .pageSize(4)
+                        .build();
+
+                final List<InterceptedInteractionSummary> found = new ArrayList<>();
+                InterceptedInteractionPage page = querying.findInteractions(query);
+                found.addAll(page.getInteractions());
+                while (page.hasNextPage()) {
+                    page = querying.findInteractions(query.toBuilder().pageToken(page.getNextPageToken()).build());
+                    found.addAll(page.getInteractions());
+                }
+
+                assertThat(found.stream().map(InterceptedInteractionSummary::getCreatedAt).collect(Collectors.toList()),
+                        is(found.stream().map(InterceptedInteractionSummary::getCreatedAt).sorted().collect(Collectors.toList())));
+                assertThat(found.stream().map(InterceptedInteractionSummary::getTraceId).collect(Collectors.toList()), containsInAnyOrder(
+                        "trace3", "trace4", "trace6", "trace7", "trace8", "trace9", "trace11", "trace12", "trace13",
+                        "trace14", "trace16", "trace17", "trace18", "trace19", "trace21", "trace22", "trace23"));
+                assertThat(database.getCollection("interceptedInteraction").listIndexes().map(index -> index.getString("name")).into(new ArrayList<>()),
+                        hasItems("createdAt_1__id_1", "serviceName_1_createdAt_1__id_1", "target_1_createdAt_1__id_1"));
+            }
+            database.drop();
+        }
+    }
+
+    @Test
+    public void shouldQueryBucketsNotPreparedYetWithoutTheIndexHint() {
+        try (final MongoClient mongoClient = MongoClients.create("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)) {
+            final MongoDatabase database = mongoClient.getDatabase("lsdUnpreparedBuckets");
+            try (final InterceptedDocumentMongoRepository querying = InterceptedDocumentMongoRepository.builder()
+                    .mongoDatabase(database)
+                    .storageLayout(StorageLayout.DAILY_BUCKETS)
+                    .retentionDays(3)
+                    .queryIndexes(true)
+                    .build()) {
+                await().until(querying::isActive);
+                // Written by another writer, into a bucket created after startup and without the query indexes
+                final ZonedDateTime yesterday = ZonedDateTime.now(ZoneId.of("UTC")).minusDays(1);
+                database.getCollection("interceptedInteraction_" + yesterday.format(BASIC_ISO_DATE)).insertOne(new Document("traceId", "unpreparedTrace")
+                        .append("serviceName", "orders")
+                        .append("type", "REQUEST")
+                        .append("elapsedTime", 5)
+                        .append("createdAt", Date.from(yesterday.toInstant())));
+
+                final List<InterceptedInteractionSummary> found = querying.findInteractions(InteractionQuery.builder().serviceName("orders").build()).getInteractions();
+
+                assertThat(found.stream().map(InterceptedInteractionSummary::getTraceId).collect(Collectors.toList()), contains("unpreparedTrace"));
+                assertThat(found.get(0).getElapsedTime(), is(5L));
+            }
+            database.drop();
+        }
+    }
+
+    @Test
+    public void shouldAggregateTraceStatisticsAndServiceEdgesInTheDatabase() {
+        try (final MongoClient mongoClient = MongoClients.create("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)) {
+            final MongoDatabase database = mongoClient.getDatabase("lsdAggregations");
+            try (final InterceptedDocumentMongoRepository aggregating = InterceptedDocumentMongoRepository.builder()
+                    .mongoDatabase(database)
+                    .build()) {
+                await().until(aggregating::isActive);
+                final ZonedDateTime start = ofInstant(ofEpochSecond(1000), ZoneId.of("UTC"));
+                aggregating.saveAll(List.of(
+                        call("traceB", "payments", REQUEST, null, null, start.plusSeconds(5)),
+                        call("traceB", "payments", RESPONSE, "404 NOT_FOUND", 20L, start.plusSeconds(6)),
+                        call("traceA", "payments", REQUEST, null, null, start),
+                        call("traceA", "payments", RESPONSE, "200 OK", 10L, start.plusSeconds(1)),
+                        call("traceA", "stock", REQUEST, null, null, start.plusSeconds(2)),
+                        call("traceA", "stock", RESPONSE, "500 INTERNAL_SERVER_ERROR", 30L, start.plusSeconds(3))));
+
+                assertThat(aggregating.findTraceStatistics("traceA", "traceB", "unknown"), contains(
+                        TraceStatistics.builder().traceId("traceA").interactionCount(4).totalElapsedTime(40).errorCount(1).build(),
+                        TraceStatistics.builder().traceId("traceB").interactionCount(2).totalElapsedTime(20).errorCount(1).build()));
+                assertThat(aggregating.findServiceEdges(null, null), contains(
+                        ServiceEdge.builder().serviceName("orders").target("payments").callCount(2).averageElapsedTime(15.0).build(),
+                        ServiceEdge.builder().serviceName("orders").target("stock").callCount(1).averageElapsedTime(30.0).build()));
+                assertThat(aggregating.findServiceEdges(start.plusSeconds(4).toInstant(), null), contains(
+                        ServiceEdge.builder().serviceName("orders").target("payments").callCount(1).averageElapsedTime(20.0).build()));
+                assertThat(aggregating.findTraceIds(start.toInstant(), start.plusSeconds(10).toInstant()), contains("traceA", "traceB"));
+                assertThat(aggregating.findTraceIds(start.plusSeconds(4).toInstant(), null), contains("traceB"));
+            }
+            database.drop();
+        }
+    }
+
+    @Test
+    public void shouldServeRepeatedTraceReadsFromTheCacheUntilTheTraceChanges() {
+        try (final InterceptedDocumentMongoRepository caching = InterceptedDocumentMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(1500)
+                .collectionSizeLimit(1L)
+                .traceCache(TraceCache.builder().build())
+                .build()) {
+            await().until(caching::isActive);
+            final ZonedDateTime start = ofInstant(ofEpochSecond(0), ZoneId.of("UTC"));
+            caching.save(InterceptedInteraction.builder().traceId("cachedTrace").body("first").type(REQUEST).createdAt(start).build());
+            caching.findByTraceIds("cachedTrace");
+            // Same size, as documents in a capped collection cannot grow
+            testRepository.getCollection().updateMany(eq("traceId", "cachedTrace"), new Document("$set", new Document("body", "FIRST")));
+
+            assertThat(caching.findByTraceIds("cachedTrace").get(0).getBody(), is("first"));
+
+            caching.save(InterceptedInteraction.builder().traceId("cachedTrace").body("second").type(RESPONSE).createdAt(start.plusSeconds(1)).build());
+            caching.save(InterceptedInteraction.builder().traceId("otherCachedTrace").body("other").type(REQUEST).createdAt(start.plusSeconds(2)).build());
+
+            assertThat(caching.findByTraceIds("cachedTrace", "otherCachedTrace").stream().map(InterceptedInteraction::getBody).collect(Collectors.toList()),
+                    contains("FIRST", "second", "other"));
+        }
+    }
+
+    @Test
+    public void shouldPushNewInteractionsOfASubscribedTraceAndResumeAfterTheLastOneDelivered() {
+        final ZonedDateTime start = ofInstant(ofEpochSecond(0), ZoneId.of("UTC"));
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final InteractionSubscription subscription = underTest.subscribe(InteractionSubscriptionQuery.builder().traceId("liveTrace").build(),
+                (interceptedInteraction, resumeToken) -> received.add(interceptedInteraction.getBody()));
+
+        await().untilAsserted(() -> {
+            underTest.save(InterceptedInteraction.builder().traceId("liveTrace").body("probe").type(REQUEST).createdAt(start).build());
+            assertThat(received, hasItem("probe"));
+        });
+        received.clear();
+        underTest.save(InterceptedInteraction.builder().traceId("otherTrace").body("other").type(REQUEST).createdAt(start).build());
+        underTest.save(InterceptedInteraction.builder().traceId("liveTrace").body("first").type(RESPONSE).createdAt(start.plusSeconds(1)).build());
+
+        await().untilAsserted(() -> assertThat(received, hasItem("first")));
+        assertThat(received, not(hasItem("other")));
+        subscription.close();
+        assertThat(subscription.isActive(), is(false));
+
+        received.clear();
+        underTest.save(InterceptedInteraction.builder().traceId("liveTrace").body("second").type(REQUEST).createdAt(start.plusSeconds(2)).build());
+        final InteractionSubscription resumed = underTest.subscribe(InteractionSubscriptionQuery.builder()
+                        .traceId("liveTrace")
+                        .resumeToken(subscription.getResumeToken())
+                        .build(),
+                (interceptedInteraction, resumeToken) -> received.add(interceptedInteraction.getBody()));
+
+        await().untilAsserted(() -> assertThat(received, contains("second")));
+        resumed.close();
+    }
+
+    private static InterceptedInteraction call(final String traceId, final String target, final Type type, final String httpStatus,
+                                               final Long elapsedTime, final ZonedDateTime createdAt) {
+        return InterceptedInteraction.builder()
+                .traceId(traceId)
+                .serviceName("orders")
+                .target(target)
+                .type(type)
+                .httpStatus(httpStatus)
+                .elapsedTime(elapsedTime)
+                .createdAt(createdAt)
+                .build();
+    }
+
+    private List<String> indexNames() {
+        final ListIndexesIterable<Document> indexes = testRepository.getCollection().listIndexes();
+        return stream(indexes.spliterator(), false)
+                .map(doc -> (String) doc.get("name"))
+                .collect(Collectors.toList());
+    }
 }
@@ -2,19 +2,26 @@ package io.lsdconsulting.lsd.distributed.mongo.integration;
 
 import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
 import io.lsdconsulting.lsd.distributed.mongo.integration.testapp.TestApplication;
+import io.lsdconsulting.lsd.distributed.mongo.repository.CircuitBreaker;
+import io.lsdconsulting.lsd.distributed.mongo.repository.DiskSpool;
 import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.PendingWritePolicy;
 import org.jeasy.random.EasyRandom;
 import org.jeasy.random.EasyRandomParameters;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
 
 import static io.lsdconsulting.lsd.distributed.mongo.integration.testapp.repository.TestRepository.*;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.CircuitBreaker.State.CLOSED;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.CircuitBreaker.State.OPEN;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
 import static org.awaitility.Awaitility.await;
@@ -46,56 +53,180 @@ class InterceptedDocumentMongoRepositoryResiliencyIT {
 
     @Test
     public void shouldHandleDbBeingDownGracefullyOnStartup() {
-        new InterceptedDocumentMongoRepository("mongodb://" + randomAlphabetic(10), DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT);
+        new InterceptedDocumentMongoRepository("mongodb://" + randomAlphabetic(10), DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT).close();
     }
 
     @Test
     public void shouldNotSlowDownStartupIfDbDown() {
         await()
-                .atLeast(450, MILLISECONDS)
-                .atMost(1000, MILLISECONDS)
-                .untilAsserted(() -> assertThat(new InterceptedDocumentMongoRepository("mongodb://" + randomAlphabetic(10) + ":" + MONGODB_PORT, DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT), is(notNullValue())));
+                .atMost(200, MILLISECONDS)
+                .untilAsserted(() -> {
+                    try (InterceptedDocumentMongoRepository underTest = new InterceptedDocumentMongoRepository("mongodb://" + randomAlphabetic(10) + ":" + MONGODB_PORT, DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT)) {
+                        assertThat(underTest, is(notNullValue()));
+                    }
+                });
     }
 
     @Test
-    public void shouldHandleDbGoingDownAfterStartup() {
-        InterceptedDocumentMongoRepository underTest = new InterceptedDocumentMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT, DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT);
-        InterceptedInteraction interceptedInteraction =  easyRandom.nextObject(InterceptedInteraction.class);
-        underTest.save(interceptedInteraction);
-        List<InterceptedInteraction> initialResult = underTest.findByTraceIds("traceId");
-        assertThat(initialResult, is(notNullValue()));
+    public void shouldBecomeActiveOnceDbIsAvailable() {
         tearDownDatabase();
+        try (InterceptedDocumentMongoRepository underTest = InterceptedDocumentMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(DB_CONNECTION_TIMEOUT)
+                .collectionSizeLimit(DB_COLLECTION_SIZE_LIMIT)
+                .initialRetryDelayMillis(100L)
+                .build()) {
+            InterceptedInteraction interceptedInteraction = easyRandom.nextObject(InterceptedInteraction.class);
+            underTest.save(interceptedInteraction);
+            assertThat(underTest.isActive(), is(false));
+
+            setupDatabase();
+
+            await()
+                    .atMost(5000, MILLISECONDS)
+                    .untilAsserted(() -> assertThat(underTest.findByTraceIds(interceptedInteraction.getTraceId()), hasSize(1)));
+        }
+    }
 
-        List<InterceptedInteraction> result = underTest.findByTraceIds("traceId");
+    @Test
+    public void shouldCountThePendingWritesEvictedOrDiscardedBeforeBecomingActive() {
+        try (InterceptedDocumentMongoRepository buffering = InterceptedDocumentMongoRepository.builder()
+                .dbConnectionString("mongodb://" + randomAlphabetic(10))
+                .connectionTimeout(DB_CONNECTION_TIMEOUT)
+                .pendingWriteCapacity(2)
+                .build();
+             InterceptedDocumentMongoRepository discarding = InterceptedDocumentMongoRepository.builder()
+                     .dbConnectionString("mongodb://" + randomAlphabetic(10))
+                     .connectionTimeout(DB_CONNECTION_TIMEOUT)
+                     .pendingWritePolicy(PendingWritePolicy.DROP)
+                     .build()) {
+            for (int i = 0; i < 5; i++) {
+                buffering.save(easyRandom.nextObject(InterceptedInteraction.class));
+                discarding.save(easyRandom.nextObject(InterceptedInteraction.class));
+            }
+
+            assertThat(buffering.getDroppedCount(), is(3L));
+            assertThat(discarding.getDroppedCount(), is(5L));
+        }
+    }
 
-        assertThat(result, is(empty()));
+    @Test
+    public void shouldHandleDbGoingDownAfterStartup() {
+        try (InterceptedDocumentMongoRepository underTest = new InterceptedDocumentMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT, DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT)) {
+            await().until(underTest::isActive);
+            InterceptedInteraction interceptedInteraction =  easyRandom.nextObject(InterceptedInteraction.class);
+            underTest.save(interceptedInteraction);
+            List<InterceptedInteraction> initialResult = underTest.findByTraceIds("traceId");
+            assertThat(initialResult, is(notNullValue()));
+            tearDownDatabase();
+
+            List<InterceptedInteraction> result = underTest.findByTraceIds("traceId");
+
+            assertThat(result, is(empty()));
+        }
     }
 
     @Test
     public void shouldRecoverFromDbGoingDown() {
-        InterceptedDocumentMongoRepository underTest = new InterceptedDocumentMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT, DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT);
-        InterceptedInteraction interceptedInteraction =  easyRandom.nextObject(InterceptedInteraction.class);
-        underTest.save(interceptedInteraction);
-        tearDownDatabase();
-        List<InterceptedInteraction> result = underTest.findByTraceIds("traceId");
-        assertThat(result, is(empty()));
+        try (InterceptedDocumentMongoRepository underTest = new InterceptedDocumentMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT, DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT)) {
+            await().until(underTest::isActive);
+            InterceptedInteraction interceptedInteraction =  easyRandom.nextObject(InterceptedInteraction.class);
+            underTest.save(interceptedInteraction);
+            tearDownDatabase();
+            List<InterceptedInteraction> result = underTest.findByTraceIds("traceId");
+            assertThat(result, is(empty()));
+
+            setupDatabase();
+
+            List<InterceptedInteraction> initialResult = underTest.findByTraceIds("traceId");
+            assertThat(initialResult, is(notNullValue()));
+        }
+    }
 
-        setupDatabase();
+    @Test
+    public void shouldNotSlowDownProduction() {
+        try (InterceptedDocumentMongoRepository underTest = new InterceptedDocumentMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT, DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT)) {
+            await().until(underTest::isActive);
+            InterceptedInteraction interceptedInteraction =  easyRandom.nextObject(InterceptedInteraction.class);
+            underTest.save(interceptedInteraction);
+            tearDownDatabase();
+
+            await()
+                    .atLeast(450, MILLISECONDS)
+                    .atMost(1000, MILLISECONDS)
+                    .untilAsserted(() -> assertThat(underTest.findByTraceIds("traceId"), is(empty())));
+        }
+    }
 
-        List<InterceptedInteraction> initialResult = underTest.findByTraceIds("traceId");
-        assertThat(initialResult, is(notNullValue()));
+    @Test
+    public void shouldFailFastOnceTheCircuitIsOpen() {
+        try (InterceptedDocumentMongoRepository underTest = repositoryWithCircuitBreaker()) {
+            underTest.save(easyRandom.nextObject(InterceptedInteraction.class));
+            tearDownDatabase();
+            underTest.findByTraceIds("traceId");
+            underTest.findByTraceIds("traceId");
+
+            assertThat(underTest.getCircuitBreakerState(), is(OPEN));
+            await()
+                    .atMost(50, MILLISECONDS)
+                    .untilAsserted(() -> assertThat(underTest.findByTraceIds("traceId"), is(empty())));
+        }
     }
 
     @Test
-    public void shouldNotSlowDownProduction() {
-        InterceptedDocumentMongoRepository underTest = new InterceptedDocumentMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT, DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT);
-        InterceptedInteraction interceptedInteraction =  easyRandom.nextObject(InterceptedInteraction.class);
-        underTest.save(interceptedInteraction);
-        tearDownDatabase();
+    public void shouldCloseTheCircuitOnceDbIsBack() {
+        try (InterceptedDocumentMongoRepository underTest = repositoryWithCircuitBreaker()) {
+            InterceptedInteraction interceptedInteraction = easyRandom.nextObject(InterceptedInteraction.class);
+            tearDownDatabase();
+            underTest.findByTraceIds("traceId");
+            underTest.findByTraceIds("traceId");
+            assertThat(underTest.getCircuitBreakerState(), is(OPEN));
+
+            setupDatabase();
+
+            await()
+                    .atMost(5000, MILLISECONDS)
+                    .untilAsserted(() -> assertThat(underTest.getCircuitBreakerState(), is(CLOSED)));
+            underTest.save(interceptedInteraction);
+            assertThat(underTest.findByTraceIds(interceptedInteraction.getTraceId()), hasSize(1));
+        }
+    }
 
-        await()
-                .atLeast(450, MILLISECONDS)
-                .atMost(1000, MILLISECONDS)
-                .untilAsserted(() -> assertThat(underTest.findByTraceIds("traceId"), is(empty())));
+    @Test
+    public void shouldReplaySpooledInteractionsOnceDbIsBack(@TempDir final Path spoolDirectory) {
+        try (InterceptedDocumentMongoRepository underTest = InterceptedDocumentMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(DB_CONNECTION_TIMEOUT)
+                .collectionSizeLimit(DB_COLLECTION_SIZE_LIMIT)
+                .circuitBreaker(new CircuitBreaker(2, 100))
+                .spool(DiskSpool.builder().directory(spoolDirectory).build())
+                .build()) {
+            await().until(underTest::isActive);
+            tearDownDatabase();
+            InterceptedInteraction failed = easyRandom.nextObject(InterceptedInteraction.class);
+            InterceptedInteraction alsoFailed = easyRandom.nextObject(InterceptedInteraction.class);
+            InterceptedInteraction skipped = easyRandom.nextObject(InterceptedInteraction.class);
+            underTest.save(failed);
+            underTest.save(alsoFailed);
+            assertThat(underTest.getCircuitBreakerState(), is(OPEN));
+            underTest.save(skipped);
+
+            setupDatabase();
+
+            await()
+                    .atMost(5000, MILLISECONDS)
+                    .untilAsserted(() -> assertThat(underTest.findByTraceIds(failed.getTraceId(), alsoFailed.getTraceId(), skipped.getTraceId()), hasSize(3)));
+        }
+    }
+
+    private InterceptedDocumentMongoRepository repositoryWithCircuitBreaker() {
+        InterceptedDocumentMongoRepository underTest = InterceptedDocumentMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(DB_CONNECTION_TIMEOUT)
+                .collectionSizeLimit(DB_COLLECTION_SIZE_LIMIT)
+                .circuitBreaker(new CircuitBreaker(2, 100))
+                .build();
+        await().until(underTest::isActive);
+        return underTest;
     }
 }
@@ -0,0 +1,181 @@
+package io.lsdconsulting.lsd.distributed.mongo.integration;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.access.model.Type;
+import io.lsdconsulting.lsd.distributed.mongo.integration.testapp.TestApplication;
+import io.lsdconsulting.lsd.distributed.mongo.integration.testapp.repository.TestRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentReactiveMongoRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.codec.Compression;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import reactor.test.StepVerifier;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.lsdconsulting.lsd.distributed.access.model.Type.REQUEST;
+import static io.lsdconsulting.lsd.distributed.access.model.Type.RESPONSE;
+import static io.lsdconsulting.lsd.distributed.mongo.integration.testapp.repository.TestRepository.*;
+import static java.time.Instant.ofEpochSecond;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.ZonedDateTime.ofInstant;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = {TestApplication.class})
+class InterceptedDocumentReactiveMongoRepositoryIT {
+
+    private final TestRepository testRepository = new TestRepository();
+    private InterceptedDocumentReactiveMongoRepository underTest;
+
+    @BeforeAll
+    static void setupTestDatabase() {
+        setupDatabase();
+    }
+
+    @BeforeEach
+    void setup() {
+        underTest = new InterceptedDocumentReactiveMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT, 1500, 1L);
+    }
+
+    @AfterEach
+    void closeRepository() {
+        underTest.close();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        tearDownDatabase();
+        tearDownClient();
+    }
+
+    @Test
+    public void shouldSaveAndRetrieveInCreationOrder() {
+        final String traceId = randomAlphabetic(10);
+        final InterceptedInteraction response = interceptedInteraction(traceId, RESPONSE, 2);
+        final InterceptedInteraction request = interceptedInteraction(traceId, REQUEST, 1);
+
+        StepVerifier.create(underTest.saveReactive(response).then(underTest.saveReactive(request)))
+                .verifyComplete();
+
+        StepVerifier.create(underTest.findByTraceIdsReactive(traceId))
+                .assertNext(result -> assertThat(result.getType(), is(REQUEST)))
+                .assertNext(result -> assertThat(result.getType(), is(RESPONSE)))
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldCompleteEmptyWhenRepositoryIsDisabled() {
+        try (final InterceptedDocumentReactiveMongoRepository disabled = new InterceptedDocumentReactiveMongoRepository("mongodb://" + randomAlphabetic(10), 500, 1L)) {
+            StepVerifier.create(disabled.findByTraceIdsReactive("traceId"))
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    public void shouldApplyTheWritePolicyBeforeSaving() {
+        final String traceId = randomAlphabetic(10);
+        try (final InterceptedDocumentReactiveMongoRepository filtering = InterceptedDocumentReactiveMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(1500)
+                .collectionSizeLimit(1L)
+                .writePolicy(interceptedInteraction -> interceptedInteraction.getType() == REQUEST ? null : interceptedInteraction)
+                .build()) {
+            StepVerifier.create(filtering.saveReactive(interceptedInteraction(traceId, REQUEST, 1))
+                            .then(filtering.saveReactive(interceptedInteraction(traceId, RESPONSE, 2))))
+                    .verifyComplete();
+
+            StepVerifier.create(filtering.findByTraceIdsReactive(traceId))
+                    .assertNext(result -> assertThat(result.getType(), is(RESPONSE)))
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    public void shouldReplaceTheTraceIndexWithTheCoveringIndex() {
+        // Lets the repository of every test finish preparing the collection first
+        StepVerifier.create(underTest.findByTraceIdsReactive("coveredTraceId"))
+                .verifyComplete();
+        try (final InterceptedDocumentReactiveMongoRepository covering = InterceptedDocumentReactiveMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(1500)
+                .collectionSizeLimit(1L)
+                .coveringIndex(true)
+                .build()) {
+            StepVerifier.create(covering.findByTraceIdsReactive("coveredTraceId"))
+                    .verifyComplete();
+
+            assertThat(testRepository.getCollection().listIndexes().map(index -> index.getString("name")).into(new ArrayList<>()),
+                    allOf(hasItem("traceId_1_createdAt_1_summary"), not(hasItem("traceId_1_createdAt_1"))));
+        }
+    }
+
+    @Test
+    public void shouldReadValuesCompressedWithAPresetDictionary() {
+        final String traceId = randomAlphabetic(10);
+        final String body = "{\"order\":{\"id\":42,\"status\":\"CREATED\"}}".repeat(10);
+        final List<byte[]> dictionaries = List.of(body.substring(0, 40).getBytes(UTF_8));
+        try (final InterceptedDocumentMongoRepository blocking = InterceptedDocumentMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(1500)
+                .collectionSizeLimit(1L)
+                .compression(Compression.deflate(64, dictionaries))
+                .build();
+             final InterceptedDocumentReactiveMongoRepository reading = InterceptedDocumentReactiveMongoRepository.builder()
+                     .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                     .connectionTimeout(1500)
+                     .collectionSizeLimit(1L)
+                     .compression(Compression.deflate(64, dictionaries))
+                     .build()) {
+            await().until(blocking::isActive);
+            blocking.save(InterceptedInteraction.builder().traceId(traceId).body(body).type(REQUEST)
+                    .createdAt(ofInstant(ofEpochSecond(1), ZoneId.of("UTC"))).build());
+
+            StepVerifier.create(reading.findByTraceIdsReactive(traceId))
+                    .assertNext(result -> assertThat(result.getBody(), is(body)))
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    public void shouldPrepareTheCollectionOnceTheDatabaseIsAvailable() {
+        final String traceId = randomAlphabetic(10);
+        tearDownDatabase();
+        try (final InterceptedDocumentReactiveMongoRepository recovering = InterceptedDocumentReactiveMongoRepository.builder()
+                .dbConnectionString("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT)
+                .connectionTimeout(500)
+                .collectionSizeLimit(1L)
+                .initialRetryDelayMillis(100L)
+                .build()) {
+            StepVerifier.create(recovering.findByTraceIdsReactive(traceId))
+                    .verifyComplete();
+
+            setupDatabase();
+
+            await().atMost(5000, MILLISECONDS).untilAsserted(() -> {
+                StepVerifier.create(recovering.saveReactive(interceptedInteraction(traceId, REQUEST, 1)))
+                        .verifyComplete();
+                assertThat(recovering.findByTraceIds(traceId), is(not(empty())));
+            });
+        }
+    }
+
+    private InterceptedInteraction interceptedInteraction(final String traceId, final Type type, final long createdAtSeconds) {
+        return InterceptedInteraction.builder()
+                .traceId(traceId)
+                .body("body")
+                .path("/path")
+                .type(type)
+                .createdAt(ofInstant(ofEpochSecond(createdAtSeconds), ZoneId.of("UTC")))
+                .build();
+    }
+}
@@ -0,0 +1,163 @@
+package io.lsdconsulting.lsd.distributed.mongo.integration;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import io.lsdconsulting.lsd.distributed.mongo.integration.testapp.TestApplication;
+import io.lsdconsulting.lsd.distributed.mongo.integration.testapp.repository.TestRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InteractionQuery;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InteractionSubscription;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InteractionSubscriptionQuery;
+import io.lsdconsulting.lsd.distributed.mongo.repository.InterceptedDocumentMongoRepository;
+import io.lsdconsulting.lsd.distributed.mongo.repository.WriteBehindInterceptedDocumentRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.mongodb.client.model.Filters.eq;
+import static io.lsdconsulting.lsd.distributed.access.model.Type.REQUEST;
+import static io.lsdconsulting.lsd.distributed.mongo.integration.testapp.repository.TestRepository.*;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.OverflowPolicy.DROP_NEWEST;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, classes = {TestApplication.class})
+class WriteBehindInterceptedDocumentRepositoryIT {
+
+    private static final int DB_CONNECTION_TIMEOUT = 500;
+    private static final long DB_COLLECTION_SIZE_LIMIT = 1024 * 100L;
+    private static final int QUEUE_CAPACITY = 10;
+    private static final int BATCH_SIZE = 5;
+    private static final int SAVES_WHILE_DOWN = 1000;
+
+    private final TestRepository testRepository = new TestRepository();
+
+    private WriteBehindInterceptedDocumentRepository underTest;
+
+    @BeforeEach
+    void setup() {
+        setupDatabase();
+        final InterceptedDocumentMongoRepository delegate = new InterceptedDocumentMongoRepository("mongodb://" + MONGODB_HOST + ":" + MONGODB_PORT, DB_CONNECTION_TIMEOUT, DB_COLLECTION_SIZE_LIMIT);
+        await().until(delegate::isActive);
+        underTest = new WriteBehindInterceptedDocumentRepository(delegate, QUEUE_CAPACITY, BATCH_SIZE, 50, DROP_NEWEST);
+    }
+
+    @AfterEach
+    void tearDownTestDatabase() {
+        underTest.close();
+        tearDownDatabase();
+    }
+
+    @AfterAll
+    static void tearDownTestClient() {
+        tearDownClient();
+    }
+
+    @Test
+    public void shouldEventuallyPersistQueuedInteractions() {
+        final String traceId = randomAlphabetic(10);
+        for (int i = 0; i < 7; i++) {
+            underTest.save(interceptedInteraction(traceId));
+        }
+
+        await().atMost(2000, MILLISECONDS)
+                .untilAsserted(() -> assertThat(underTest.findByTraceIds(traceId), hasSize(7)));
+    }
+
+    @Test
+    public void shouldFlushQueuedInteractionsOnClose() {
+        final String traceId = randomAlphabetic(10);
+        underTest.save(interceptedInteraction(traceId));
+        underTest.save(interceptedInteraction(traceId));
+
+        underTest.close();
+
+        assertThat(testRepository.getCollection().countDocuments(eq("traceId", traceId)), is(2L));
+        assertThat(underTest.findByTraceIds(traceId), is(empty()));
+    }
+
+    @Test
+    public void shouldNotBlockCallerWhileDbIsDown() {
+        tearDownDatabase();
+
+        final long startTime = nanoTime();
+        for (int i = 0; i < SAVES_WHILE_DOWN; i++) {
+            underTest.save(interceptedInteraction(randomAlphabetic(10)));
+        }
+        final long elapsedMillis = NANOSECONDS.toMillis(nanoTime() - startTime);
+
+        // The flusher is stuck on a single batch until the connection times out, so the rest overflow the queue
+        assertThat(elapsedMillis, is(lessThan((long) DB_CONNECTION_TIMEOUT)));
+        assertThat(underTest.getDroppedCount(), is(greaterThanOrEqualTo((long) SAVES_WHILE_DOWN - QUEUE_CAPACITY - BATCH_SIZE)));
+
+        setupDatabase();
+    }
+
+    @Test
+    public void shouldRejectInteractionsSavedAfterClose() {
+        underTest.close();
+
+        underTest.save(interceptedInteraction(randomAlphabetic(10)));
+
+        assertThat(underTest.getDroppedCount(), is(1L));
+        assertThat(underTest.getQueueSize(), is(0));
+    }
+
+    @Test
+    public void shouldQueryInteractionsThroughTheDelegate() {
+        for (int i = 0; i < 3; i++) {
+            underTest.save(interceptedInteraction(randomAlphabetic(10)));
+        }
+
+        await().atMost(2000, MILLISECONDS)
+                .untilAsserted(() -> assertThat(underTest.findInteractions(InteractionQuery.builder().path("/path").build()).getInteractions(), hasSize(3)));
+    }
+
+    @Test
+    public void shouldAggregateThroughTheDelegate() {
+        final String traceId = randomAlphabetic(10);
+        underTest.save(interceptedInteraction(traceId));
+        underTest.save(interceptedInteraction(traceId));
+
+        await().atMost(2000, MILLISECONDS)
+                .untilAsserted(() -> assertThat(underTest.findTraceIds(null, null), contains(traceId)));
+        assertThat(underTest.findTraceStatistics(traceId).get(0).getInteractionCount(), is(2L));
+        assertThat(underTest.findServiceEdges(null, null).get(0).getCallCount(), is(2L));
+    }
+
+    @Test
+    public void shouldSubscribeThroughTheDelegate() {
+        final String traceId = randomAlphabetic(10);
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final InteractionSubscription subscription = underTest.subscribe(InteractionSubscriptionQuery.builder().traceId(traceId).build(),
+                (interceptedInteraction, resumeToken) -> received.add(interceptedInteraction.getTraceId()));
+
+        await().atMost(2000, MILLISECONDS).untilAsserted(() -> {
+            underTest.save(interceptedInteraction(traceId));
+            assertThat(received, hasItem(traceId));
+        });
+        subscription.close();
+    }
+
+    private InterceptedInteraction interceptedInteraction(final String traceId) {
+        return InterceptedInteraction.builder()
+                .traceId(traceId)
+                .body(randomAlphabetic(100))
+                .path("/path")
+                .httpMethod("GET")
+                .type(REQUEST)
+                .createdAt(ZonedDateTime.now(ZoneId.of("UTC")))
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package io.lsdconsulting.lsd.distributed.mongo.metrics;
+
+import com.mongodb.MongoTimeoutException;
+import io.lsdconsulting.lsd.distributed.mongo.repository.RepositoryState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.lsdconsulting.lsd.distributed.mongo.repository.RepositoryState.ACTIVE;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.RepositoryState.DISABLED;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.RepositoryState.INITIALISING;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+class MicrometerRepositoryMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MicrometerRepositoryMetrics underTest = new MicrometerRepositoryMetrics(meterRegistry);
+
+    @Test
+    public void shouldRecordWrites() {
+        underTest.saved(MILLISECONDS.toNanos(3), 2, 512);
+
+        assertThat(meterRegistry.get("lsd.repository.save").timer().count(), is(1L));
+        assertThat(meterRegistry.get("lsd.repository.save").timer().totalTime(MILLISECONDS), is(closeTo(3.0, 0.001)));
+        assertThat(meterRegistry.get("lsd.repository.documents.written").counter().count(), is(2.0));
+        assertThat(meterRegistry.get("lsd.repository.bytes.written").counter().count(), is(512.0));
+    }
+
+    @Test
+    public void shouldCountInteractionsSkippedByTheWritePolicy() {
+        underTest.skipped(3);
+
+        assertThat(meterRegistry.get("lsd.repository.documents.skipped").counter().count(), is(3.0));
+    }
+
+    @Test
+    public void shouldRecordResultsReturnedPerQuery() {
+        underTest.found(MILLISECONDS.toNanos(1), 7);
+
+        assertThat(meterRegistry.get("lsd.repository.find").timer().count(), is(1L));
+        assertThat(meterRegistry.get("lsd.repository.find.results").summary().totalAmount(), is(7.0));
+    }
+
+    @Test
+    public void shouldCountTraceCacheHitsAndMisses() {
+        underTest.cacheHits(3);
+        underTest.cacheMisses(1);
+
+        assertThat(meterRegistry.get("lsd.repository.cache.hits").counter().count(), is(3.0));
+        assertThat(meterRegistry.get("lsd.repository.cache.misses").counter().count(), is(1.0));
+    }
+
+    @Test
+    public void shouldCountFailuresByOperationAndExceptionType() {
+        underTest.failed("save", new MongoTimeoutException("timeout"));
+        underTest.failed("save", new MongoTimeoutException("timeout"));
+
+        assertThat(meterRegistry.get("lsd.repository.failures")
+                .tag("operation", "save")
+                .tag("exception", "MongoTimeoutException")
+                .counter().count(), is(2.0));
+    }
+
+    @Test
+    public void shouldReportTheStateOfEveryRepository() {
+        final AtomicReference<RepositoryState> first = new AtomicReference<>(INITIALISING);
+        final AtomicReference<RepositoryState> second = new AtomicReference<>(DISABLED);
+        underTest.monitor(first, AtomicReference::get, state -> false);
+        underTest.monitor(second, AtomicReference::get, state -> false);
+
+        assertThat(gauge("lsd.repository.initialising", "1"), is(1.0));
+        assertThat(gauge("lsd.repository.disabled", "1"), is(0.0));
+        assertThat(gauge("lsd.repository.disabled", "2"), is(1.0));
+
+        first.set(ACTIVE);
+
+        assertThat(gauge("lsd.repository.initialising", "1"), is(0.0));
+        assertThat(gauge("lsd.repository.disabled", "1"), is(0.0));
+    }
+
+    private double gauge(final String name, final String repository) {
+        return meterRegistry.get(name).tag("repository", repository).gauge().value();
+    }
+}
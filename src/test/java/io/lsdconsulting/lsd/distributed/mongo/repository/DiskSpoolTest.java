@@ -0,0 +1,151 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DiskSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldReadBackAppendedDocumentsInOrder() {
+        try (final DiskSpool underTest = DiskSpool.builder().directory(directory).build()) {
+            underTest.append(documents(0, 3));
+
+            final DiskSpool.Batch batch = underTest.read(10);
+
+            assertThat(traceIds(batch), contains("trace0", "trace1", "trace2"));
+        }
+    }
+
+    @Test
+    public void shouldReadFromWhereTheLastCommittedBatchEnded() {
+        try (final DiskSpool underTest = DiskSpool.builder().directory(directory).build()) {
+            underTest.append(documents(0, 5));
+
+            underTest.commit(underTest.read(2));
+
+            assertThat(traceIds(underTest.read(10)), contains("trace2", "trace3", "trace4"));
+        }
+    }
+
+    @Test
+    public void shouldBeEmptyOnceEverythingIsCommitted() {
+        try (final DiskSpool underTest = DiskSpool.builder().directory(directory).build()) {
+            underTest.append(documents(0, 2));
+            assertThat(underTest.isEmpty(), is(false));
+
+            underTest.commit(underTest.read(10));
+
+            assertThat(underTest.isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void shouldResumeFromTheCommittedOffsetAfterReopening() {
+        try (final DiskSpool underTest = DiskSpool.builder().directory(directory).build()) {
+            underTest.append(documents(0, 4));
+            underTest.commit(underTest.read(3));
+        }
+
+        try (final DiskSpool underTest = DiskSpool.builder().directory(directory).build()) {
+            underTest.append(documents(4, 5));
+
+            assertThat(traceIds(underTest.read(10)), contains("trace3", "trace4"));
+        }
+    }
+
+    @Test
+    public void shouldDeleteSegmentsOnceReplayed() throws IOException {
+        final long segmentSize = documents(0, 1).get(0).getByteBuffer().remaining() + 8;
+        try (final DiskSpool underTest = DiskSpool.builder().directory(directory).segmentSizeBytes(segmentSize).build()) {
+            underTest.append(documents(0, 3));
+            assertThat(segmentFiles(), hasSize(3));
+
+            underTest.commit(underTest.read(2));
+
+            assertThat(segmentFiles(), hasSize(2));
+            assertThat(traceIds(underTest.read(10)), contains("trace2"));
+        }
+    }
+
+    @Test
+    public void shouldDropTheOldestSegmentsBeyondTheMaximumSize() {
+        final long recordSize = documents(0, 1).get(0).getByteBuffer().remaining() + 8;
+        try (final DiskSpool underTest = DiskSpool.builder().directory(directory)
+                .maxSizeBytes(4 * recordSize).segmentSizeBytes(recordSize).build()) {
+            underTest.append(documents(0, 6));
+
+            assertThat(underTest.getSize(), lessThanOrEqualTo(4 * recordSize));
+            assertThat(traceIds(underTest.read(10)), contains("trace2", "trace3", "trace4", "trace5"));
+        }
+    }
+
+    @Test
+    public void shouldSkipATornRecordLeftByACrash() throws IOException {
+        try (final DiskSpool underTest = DiskSpool.builder().directory(directory).build()) {
+            underTest.append(documents(0, 2));
+        }
+        final Path segment = segmentFiles().get(0);
+        try (final FileChannel channel = FileChannel.open(segment, WRITE)) {
+            channel.truncate(Files.size(segment) - 3);
+        }
+
+        try (final DiskSpool underTest = DiskSpool.builder().directory(directory).build()) {
+            underTest.append(documents(2, 3));
+
+            assertThat(traceIds(underTest.read(10)), contains("trace0", "trace2"));
+        }
+    }
+
+    @Test
+    public void shouldNotShareTheDirectoryBetweenSpools() {
+        try (final DiskSpool ignored = DiskSpool.builder().directory(directory).build()) {
+            assertThrows(IllegalStateException.class, () -> DiskSpool.builder().directory(directory).build());
+        }
+    }
+
+    @Test
+    public void shouldDefaultToADirectoryPerApplication() {
+        assertThat(DiskSpool.defaultDirectory("orders"), is(not(DiskSpool.defaultDirectory("payments"))));
+        assertThat(DiskSpool.defaultDirectory("orders/v2").getFileName().toString(), is("lsd-spool-orders_v2"));
+        assertThat(DiskSpool.defaultDirectory(null).getFileName().toString(), is("lsd-spool"));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".spool")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<RawBsonDocument> documents(final int from, final int to) {
+        return IntStream.range(from, to)
+                .mapToObj(i -> new RawBsonDocument(new BsonDocument("traceId", new BsonString("trace" + i)), new BsonDocumentCodec()))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> traceIds(final DiskSpool.Batch batch) {
+        return batch.getDocuments().stream()
+                .map(document -> document.getString("traceId").getValue())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,103 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class TraceCacheTest {
+
+    private final AtomicLong ticker = new AtomicLong();
+
+    @Test
+    public void shouldReturnCompletedTraces() {
+        final TraceCache underTest = new TraceCache(10_000, 1000, ticker::get);
+        final List<InterceptedInteraction> trace = List.of(interaction("traceId", "body"));
+
+        underTest.complete(underTest.reserve(List.of("traceId", "other")), Map.of("traceId", trace));
+
+        assertThat(underTest.getAllPresent(List.of("traceId", "other")), is(Map.of("traceId", trace)));
+    }
+
+    @Test
+    public void shouldNotCacheATraceInvalidatedWhileItWasLoading() {
+        final TraceCache underTest = new TraceCache(10_000, 1000, ticker::get);
+        final Object reservation = underTest.reserve(List.of("traceId"));
+
+        underTest.invalidate("traceId");
+        underTest.complete(reservation, Map.of("traceId", List.of(interaction("traceId", "body"))));
+
+        assertThat(underTest.getAllPresent(List.of("traceId")), is(anEmptyMap()));
+        assertThat(underTest.getWeight(), is(0L));
+    }
+
+    @Test
+    public void shouldExpireTracesAfterTheirTtl() {
+        final TraceCache underTest = new TraceCache(10_000, 1000, ticker::get);
+        underTest.complete(underTest.reserve(List.of("traceId")), Map.of("traceId", List.of(interaction("traceId", "body"))));
+
+        ticker.addAndGet(MILLISECONDS.toNanos(999));
+        assertThat(underTest.getAllPresent(List.of("traceId")).keySet(), contains("traceId"));
+
+        ticker.addAndGet(MILLISECONDS.toNanos(1));
+        assertThat(underTest.getAllPresent(List.of("traceId")), is(anEmptyMap()));
+        assertThat(underTest.size(), is(0));
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedTracesBeyondTheMaximumWeight() {
+        final long traceWeight = TraceCache.weigh("trace1", List.of(interaction("trace1", "x".repeat(100))));
+        final TraceCache underTest = new TraceCache(2 * traceWeight, 1000, ticker::get);
+        underTest.complete(underTest.reserve(List.of("trace1")), Map.of("trace1", List.of(interaction("trace1", "x".repeat(100)))));
+        underTest.complete(underTest.reserve(List.of("trace2")), Map.of("trace2", List.of(interaction("trace2", "x".repeat(100)))));
+
+        underTest.getAllPresent(List.of("trace1"));
+        underTest.complete(underTest.reserve(List.of("trace3")), Map.of("trace3", List.of(interaction("trace3", "x".repeat(100)))));
+
+        assertThat(underTest.getAllPresent(List.of("trace1", "trace2", "trace3")).keySet(), containsInAnyOrder("trace1", "trace3"));
+        assertThat(underTest.getWeight(), is(lessThanOrEqualTo(2 * traceWeight)));
+    }
+
+    @Test
+    public void shouldNotCacheTracesHeavierThanTheCache() {
+        final TraceCache underTest = new TraceCache(100, 1000, ticker::get);
+
+        underTest.complete(underTest.reserve(List.of("traceId")), Map.of("traceId", List.of(interaction("traceId", "x".repeat(100)))));
+
+        assertThat(underTest.size(), is(0));
+    }
+
+    @Test
+    public void shouldNotCacheTracesWithoutInteractions() {
+        final TraceCache underTest = new TraceCache(10_000, 1000, ticker::get);
+
+        underTest.complete(underTest.reserve(List.of("traceId")), Map.of());
+
+        assertThat(underTest.size(), is(0));
+    }
+
+    @Test
+    public void shouldNotBeAffectedByChangesToTheInteractionsItWasGivenOrHandedOut() {
+        final TraceCache underTest = new TraceCache(10_000, 1000, ticker::get);
+        final InterceptedInteraction loaded = interaction("traceId", "body");
+        underTest.complete(underTest.reserve(List.of("traceId")), Map.of("traceId", List.of(loaded)));
+
+        loaded.setBody("changed by the caller it was loaded for");
+        underTest.getAllPresent(List.of("traceId")).get("traceId").get(0).setBody("changed by a caller it was handed out to");
+
+        assertThat(underTest.getAllPresent(List.of("traceId")).get("traceId"), contains(interaction("traceId", "body")));
+    }
+
+    private static InterceptedInteraction interaction(final String traceId, final String body) {
+        return InterceptedInteraction.builder()
+                .traceId(traceId)
+                .body(body)
+                .build();
+    }
+}
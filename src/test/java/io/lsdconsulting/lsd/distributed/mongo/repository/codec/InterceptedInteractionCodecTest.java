@@ -0,0 +1,175 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository.codec;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.jeasy.random.EasyRandom;
+import org.jeasy.random.EasyRandomParameters;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.MongoClientSettings.getDefaultCodecRegistry;
+import static io.lsdconsulting.lsd.distributed.access.model.Type.RESPONSE;
+import static io.lsdconsulting.lsd.distributed.mongo.repository.codec.InterceptedInteractionCodec.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.Instant.ofEpochMilli;
+import static java.time.ZonedDateTime.ofInstant;
+import static org.bson.codecs.configuration.CodecRegistries.*;
+import static org.bson.codecs.pojo.PojoCodecProvider.builder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class InterceptedInteractionCodecTest {
+
+    private final EasyRandom easyRandom = new EasyRandom(new EasyRandomParameters()
+            .seed(Instant.now().toEpochMilli())
+            .randomize(ZonedDateTime.class, () -> ofInstant(ofEpochMilli(1_600_000_000_123L), ZoneId.of("UTC"))));
+
+    private final Codec<InterceptedInteraction> automaticPojoCodec = fromRegistries(
+            getDefaultCodecRegistry(),
+            fromCodecs(new ZonedDateTimeCodec(), new TypeCodec()),
+            fromProviders(builder().automatic(true).build())
+    ).get(InterceptedInteraction.class);
+
+    private static final String JSON_PAYLOAD = "{\"order\":{\"id\":42,\"customer\":{\"name\":\"Jane Doe\",\"email\":\"jane.doe@example.com\"},"
+            + "\"items\":[{\"sku\":\"ABC-123\",\"quantity\":1,\"price\":9.99}],\"status\":\"CREATED\"}}";
+
+    private final InterceptedInteractionCodec underTest = new InterceptedInteractionCodec();
+
+    @Test
+    public void shouldProduceTheSameDocumentAsTheAutomaticPojoCodec() {
+        final InterceptedInteraction interceptedInteraction = easyRandom.nextObject(InterceptedInteraction.class);
+
+        assertThat(encode(underTest, interceptedInteraction), is(encode(automaticPojoCodec, interceptedInteraction)));
+    }
+
+    @Test
+    public void shouldOmitNullFields() {
+        final InterceptedInteraction interceptedInteraction = InterceptedInteraction.builder()
+                .traceId("traceId")
+                .type(RESPONSE)
+                .build();
+
+        assertThat(encode(underTest, interceptedInteraction), is(encode(automaticPojoCodec, interceptedInteraction)));
+    }
+
+    @Test
+    public void shouldWriteTheGivenIdAheadOfTheFields() {
+        final InterceptedInteraction interceptedInteraction = easyRandom.nextObject(InterceptedInteraction.class);
+        final ObjectId id = new ObjectId();
+        final BsonDocument document = new BsonDocument();
+
+        underTest.encode(new BsonDocumentWriter(document), interceptedInteraction, id);
+
+        assertThat(document.getFirstKey(), is("_id"));
+        assertThat(decode(underTest, document), is(interceptedInteraction));
+        assertThat(document.remove("_id"), is(new BsonObjectId(id)));
+        assertThat(document, is(encode(automaticPojoCodec, interceptedInteraction)));
+    }
+
+    @Test
+    public void shouldDecodeDocumentsWrittenByTheAutomaticPojoCodec() {
+        final InterceptedInteraction interceptedInteraction = easyRandom.nextObject(InterceptedInteraction.class);
+
+        final InterceptedInteraction result = underTest.decode(new BsonDocumentReader(encode(automaticPojoCodec, interceptedInteraction)), DecoderContext.builder().build());
+
+        assertThat(result, is(interceptedInteraction));
+    }
+
+    @Test
+    public void shouldCompressBodiesAndHeaderValuesFromTheThreshold() {
+        final InterceptedInteractionCodec compressing = new InterceptedInteractionCodec(Compression.deflate(64, List.of()));
+        final InterceptedInteraction interceptedInteraction = InterceptedInteraction.builder()
+                .traceId("traceId")
+                .body(JSON_PAYLOAD.repeat(10))
+                .requestHeaders(Map.of("Cookie", List.of("session=" + "0123456789".repeat(20), "small")))
+                .build();
+
+        final BsonDocument document = encode(compressing, interceptedInteraction);
+
+        assertThat(document.getString(COMPRESSION).getValue(), is(Compression.DEFLATE));
+        assertThat(document.get(BODY).isBinary(), is(true));
+        assertThat(document.getDocument(REQUEST_HEADERS).getArray("Cookie").get(0).isBinary(), is(true));
+        assertThat(document.getDocument(REQUEST_HEADERS).getArray("Cookie").get(1).isString(), is(true));
+        assertThat(decode(compressing, document), is(interceptedInteraction));
+    }
+
+    @Test
+    public void shouldLeaveDocumentsWithoutLargeValuesUncompressed() {
+        final InterceptedInteractionCodec compressing = new InterceptedInteractionCodec(Compression.deflate(64, List.of()));
+        final InterceptedInteraction interceptedInteraction = InterceptedInteraction.builder()
+                .traceId("traceId")
+                .body("small")
+                .build();
+
+        assertThat(encode(compressing, interceptedInteraction), is(encode(automaticPojoCodec, interceptedInteraction)));
+    }
+
+    @Test
+    public void shouldDecodeCompressedDocumentsWhenCompressionIsDisabled() {
+        final InterceptedInteraction interceptedInteraction = InterceptedInteraction.builder()
+                .traceId("traceId")
+                .body(JSON_PAYLOAD.repeat(10))
+                .build();
+
+        final BsonDocument document = encode(new InterceptedInteractionCodec(Compression.deflate(64, List.of())), interceptedInteraction);
+
+        assertThat(decode(underTest, document), is(interceptedInteraction));
+    }
+
+    @Test
+    public void shouldCompressFurtherWithAPresetDictionary() {
+        final byte[] dictionary = JSON_PAYLOAD.getBytes(UTF_8);
+        final InterceptedInteractionCodec withDictionary = new InterceptedInteractionCodec(Compression.deflate(64, List.of(dictionary)));
+        final InterceptedInteractionCodec withoutDictionary = new InterceptedInteractionCodec(Compression.deflate(64, List.of()));
+        final InterceptedInteraction interceptedInteraction = InterceptedInteraction.builder()
+                .traceId("traceId")
+                .body(JSON_PAYLOAD.replace("42", "43") + JSON_PAYLOAD.replace("Jane", "John"))
+                .build();
+
+        final BsonDocument document = encode(withDictionary, interceptedInteraction);
+
+        assertThat(document.getBinary(BODY).getData().length, is(lessThan(encode(withoutDictionary, interceptedInteraction).getBinary(BODY).getData().length)));
+        assertThat(decode(withDictionary, document), is(interceptedInteraction));
+        assertThat(decode(new InterceptedInteractionCodec(Compression.deflate(64, List.of(new byte[]{1}, dictionary))), document), is(interceptedInteraction));
+        assertThat(decode(withoutDictionary, document).getBody(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldKeepCompressingOnceThePooledDeflatersAreEnded() {
+        final Compression compression = Compression.deflate(64, List.of());
+        final InterceptedInteractionCodec compressing = new InterceptedInteractionCodec(compression);
+        final InterceptedInteraction interceptedInteraction = InterceptedInteraction.builder()
+                .traceId("traceId")
+                .body(JSON_PAYLOAD.repeat(10))
+                .build();
+        decode(compressing, encode(compressing, interceptedInteraction));
+
+        compression.close();
+        final BsonDocument document = encode(compressing, interceptedInteraction);
+
+        assertThat(document.get(BODY).isBinary(), is(true));
+        assertThat(decode(compressing, document), is(interceptedInteraction));
+    }
+
+    private static InterceptedInteraction decode(final Codec<InterceptedInteraction> codec, final BsonDocument document) {
+        return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    private static BsonDocument encode(final Codec<InterceptedInteraction> codec, final InterceptedInteraction interceptedInteraction) {
+        final BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), interceptedInteraction, EncoderContext.builder().build());
+        return document;
+    }
+}
@@ -0,0 +1,24 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository.codec;
+
+import io.lsdconsulting.lsd.distributed.access.model.Type;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TypeCodecTest {
+
+    @ParameterizedTest
+    @EnumSource(Type.class)
+    public void shouldLookUpEveryTypeByName(final Type type) {
+        assertThat(TypeCodec.forName(type.name()), is(type));
+    }
+
+    @Test
+    public void shouldRejectAnUnknownTypeLikeValueOf() {
+        assertThrows(IllegalArgumentException.class, () -> TypeCodec.forName("UNKNOWN"));
+    }
+}
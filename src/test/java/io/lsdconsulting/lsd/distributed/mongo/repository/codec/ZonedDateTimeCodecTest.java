@@ -0,0 +1,23 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository.codec;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class ZonedDateTimeCodecTest {
+
+    @ParameterizedTest
+    @ValueSource(longs = {0L, 1L, 999L, 1_600_000_000_123L, -1L, -999L, -1000L, -1_600_000_000_123L})
+    public void shouldDecodeTheSameDateTimeAsGoingThroughAnInstant(final long epochMilli) {
+        final ZonedDateTime expected = ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.of("UTC"));
+
+        assertThat(ZonedDateTimeCodec.fromEpochMilli(epochMilli), is(expected));
+        assertThat(ZonedDateTimeCodec.toEpochMilli(expected), is(epochMilli));
+    }
+}
@@ -0,0 +1,103 @@
+package io.lsdconsulting.lsd.distributed.mongo.repository.policy;
+
+import io.lsdconsulting.lsd.distributed.access.model.InterceptedInteraction;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static io.lsdconsulting.lsd.distributed.access.model.Type.REQUEST;
+import static org.apache.commons.lang3.RandomStringUtils.randomAlphanumeric;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class ConfigurableWritePolicyTest {
+
+    @Test
+    public void shouldPersistInteractionsUnchangedByDefault() {
+        final InterceptedInteraction interceptedInteraction = interaction("traceId", "/path", "service");
+
+        assertThat(ConfigurableWritePolicy.builder().build().apply(interceptedInteraction), is(sameInstance(interceptedInteraction)));
+    }
+
+    @Test
+    public void shouldTruncateLongBodiesWithAMarker() {
+        final WritePolicy underTest = ConfigurableWritePolicy.builder().maxBodySize(10).build();
+
+        final InterceptedInteraction result = underTest.apply(InterceptedInteraction.builder()
+                .traceId("traceId")
+                .body("0123456789abcdef")
+                .type(REQUEST)
+                .build());
+
+        assertThat(result.getBody(), is("0123456789... [truncated 6 characters]"));
+        assertThat(result.getTraceId(), is("traceId"));
+        assertThat(result.getType(), is(REQUEST));
+    }
+
+    @Test
+    public void shouldKeepOnlyAllowedHeadersThatAreNotDenied() {
+        final WritePolicy underTest = ConfigurableWritePolicy.builder()
+                .allowedHeaders(List.of("content-type", "authorization"))
+                .deniedHeaders(List.of("Authorization"))
+                .build();
+
+        final InterceptedInteraction result = underTest.apply(InterceptedInteraction.builder()
+                .traceId("traceId")
+                .requestHeaders(Map.of(
+                        "Content-Type", List.of("application/json"),
+                        "Authorization", List.of("Bearer token"),
+                        "X-Other", List.of("value")))
+                .build());
+
+        assertThat(result.getRequestHeaders().keySet(), contains("Content-Type"));
+    }
+
+    @Test
+    public void shouldKeepOrDropEveryInteractionOfATrace() {
+        final WritePolicy underTest = ConfigurableWritePolicy.builder().samplingRate(0.5).build();
+
+        IntStream.range(0, 100).mapToObj(i -> randomAlphanumeric(16)).forEach(traceId -> {
+            final boolean kept = underTest.apply(interaction(traceId, "/first", "first")) != null;
+
+            assertThat(underTest.apply(interaction(traceId, "/second", "second")) != null, is(kept));
+        });
+    }
+
+    @Test
+    public void shouldSampleRoughlyAtTheConfiguredRate() {
+        final WritePolicy underTest = ConfigurableWritePolicy.builder().samplingRate(0.25).build();
+
+        final long kept = IntStream.range(0, 10_000)
+                .mapToObj(i -> underTest.apply(interaction("trace-" + i, "/path", "service")))
+                .filter(result -> result != null)
+                .count();
+
+        assertThat((double) kept, is(closeTo(2_500, 250)));
+    }
+
+    @Test
+    public void shouldApplyTheLongestMatchingPathPrefixThenTheServiceRate() {
+        final WritePolicy underTest = ConfigurableWritePolicy.builder()
+                .samplingRate(0.0)
+                .serviceSamplingRates(Map.of("kept", 1.0))
+                .pathSamplingRates(Map.of("/api", 1.0, "/api/health", 0.0))
+                .build();
+
+        assertThat(underTest.apply(interaction("traceId", "/api/orders", "other")), is(notNullValue()));
+        assertThat(underTest.apply(interaction("traceId", "/api/health", "kept")), is(nullValue()));
+        assertThat(underTest.apply(interaction("traceId", "/orders", "kept")), is(notNullValue()));
+        assertThat(underTest.apply(interaction("traceId", "/orders", "other")), is(nullValue()));
+    }
+
+    private static InterceptedInteraction interaction(final String traceId, final String path, final String serviceName) {
+        return InterceptedInteraction.builder()
+                .traceId(traceId)
+                .path(path)
+                .serviceName(serviceName)
+                .body("body")
+                .type(REQUEST)
+                .build();
+    }
+}